@@ -0,0 +1,317 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+For more information, please refer to <http://unlicense.org/>
+*/
+
+/**
+ * Percolation system with checkpoints. Every change made after a 
+ * checkpoint is recorded in an undo log, and rollback() restores the 
+ * state the checkpoint was taken in, without copying the grid.
+ *
+ * The union-find uses union by rank and no path compression, so each 
+ * union changes a constant number of entries that can be logged and 
+ * restored, and a find costs O(log N). A what-if query opening k sites 
+ * and rolling them back costs O(k log N).
+ */
+public class CheckpointPercolation {
+  private static final int TOP = 1;
+  private static final int BOTTOM = 2;
+
+  /* Kinds of undo log entries */
+  private static final int OPEN = 0;       // a = site 
+  private static final int LINK = 1;       // a = child root, b = old parent 
+                                           // root flags | rank increment << 2 
+  private static final int FLAGS = 2;      // a = root, b = old flags 
+  private static final int PERCOLATES = 3; // percolates went true 
+
+  private int N; // Size of a grid 
+  private long[] open;   // bit-packed open mask 
+  private int[] parent;  // parent link, roots point to themselves 
+  private byte[] rank;   // rank of a root 
+  private byte[] flags;  // TOP/BOTTOM bits of a root 
+  private boolean percolates; // Whether a top-bottom path exists 
+
+  private int[] log;     // undo log, three ints (kind, a, b) per entry 
+  private int logSize;   // number of ints used in log 
+  private int[] marks;   // stack of outstanding checkpoint marks 
+  private int nMarks;    // number of outstanding checkpoints 
+
+  /**
+   * Constructor. Creates and N-by-N grid, with all sites blocked. 
+   * @param N size of a grid
+   */
+  public CheckpointPercolation(int n) {
+    if (n < 1)
+      throw new IllegalArgumentException("illegal input parameters");
+
+    N = n;
+    open = new long[(N*N + 63) >>> 6];
+    parent = new int[N*N];
+    for (int i = 0; i < N*N; ++i)
+      parent[i] = i;
+    rank = new byte[N*N];
+    flags = new byte[N*N];
+    percolates = false;
+
+    log = new int[48];
+    logSize = 0;
+    marks = new int[4];
+    nMarks = 0;
+  }
+
+  /**
+   * Opens the site (row i, column j) if it is not already. 
+   * @throws java.lang.IndexOutOfBoundsException if either i or j are out 
+   * of [1, N] bounds  
+   */
+  public void open(int i, int j) {
+    int siteIndex = coord2index(i, j);
+    if (isOpen(siteIndex))
+      return;
+
+    open[siteIndex >>> 6] |= 1L << siteIndex;
+    record(OPEN, siteIndex, 0);
+
+    int f = 0;
+    if (i == 1) f |= TOP;
+    if (i == N) f |= BOTTOM;
+    if (f != 0) {
+      record(FLAGS, siteIndex, flags[siteIndex]);
+      flags[siteIndex] |= f;
+    }
+
+    /* Connect this site to open adjacent sites */
+    if (i != 1 && isOpen(siteIndex - N))
+      union(siteIndex, siteIndex - N);
+    if (j != 1 && isOpen(siteIndex - 1))
+      union(siteIndex, siteIndex - 1);
+    if (j != N && isOpen(siteIndex + 1))
+      union(siteIndex, siteIndex + 1);
+    if (i != N && isOpen(siteIndex + N))
+      union(siteIndex, siteIndex + N);
+
+    if (!percolates && flags[find(siteIndex)] == (TOP | BOTTOM)) {
+      record(PERCOLATES, 0, 0);
+      percolates = true;
+    }
+  }
+
+  /**
+   * Checks whether site (row i, column j) is open. 
+   * @throws java.lang.IndexOutOfBoundsException if either i or j are out 
+   * of [1, N] bounds
+   */
+  public boolean isOpen(int i, int j) {
+    return isOpen(coord2index(i, j));
+  }
+
+  /**
+   * Checks whether site (row i, column j) is full. 
+   * @throws java.lang.IndexOutOfBoundsException if either i or j are out 
+   * of [1, N] bounds
+   */
+  public boolean isFull(int i, int j) {
+    int siteIndex = coord2index(i, j);
+    return isOpen(siteIndex) && (flags[find(siteIndex)] & TOP) != 0;
+  }
+
+  /**
+   * Checks whether the system percolates. 
+   */
+  public boolean percolates() {
+    return percolates;
+  }
+
+  /**
+   * Takes a checkpoint. Changes are recorded while there is at least one 
+   * checkpoint that was neither rolled back nor committed. 
+   * @return mark to pass to rollback()
+   */
+  public int checkpoint() {
+    if (nMarks == marks.length)
+      marks = java.util.Arrays.copyOf(marks, 2 * marks.length);
+    marks[nMarks++] = logSize;
+    return logSize;
+  }
+
+  /**
+   * Undoes every change made since the checkpoint that returned mark, and 
+   * drops that checkpoint together with all checkpoints taken after it. 
+   * @throws java.lang.IllegalArgumentException if mark does not belong to 
+   * an outstanding checkpoint
+   */
+  public void rollback(int mark) {
+    int k = nMarks - 1;
+    while (k >= 0 && marks[k] > mark)
+      --k;
+    if (k < 0 || marks[k] != mark)
+      throw new IllegalArgumentException("invalid checkpoint mark");
+    nMarks = k;
+
+    while (logSize > mark) {
+      logSize -= 3;
+      int a = log[logSize + 1];
+      int b = log[logSize + 2];
+      switch (log[logSize]) {
+        case OPEN:
+          open[a >>> 6] &= ~(1L << a);
+          break;
+        case LINK:
+          int root = parent[a];
+          parent[a] = a;
+          flags[root] = (byte) (b & (TOP | BOTTOM));
+          rank[root] -= (byte) (b >>> 2);
+          break;
+        case FLAGS:
+          flags[a] = (byte) b;
+          break;
+        default:
+          percolates = false;
+          break;
+      }
+    }
+  }
+
+  /**
+   * Keeps all changes and drops all outstanding checkpoints. 
+   */
+  public void commit() {
+    logSize = 0;
+    nMarks = 0;
+  }
+
+  /**
+   * Checks whether opening the given sites would make the system 
+   * percolate. The state is left unchanged. 
+   * @param rows rows of the sites to open
+   * @param columns columns of the sites to open
+   * @throws java.lang.IndexOutOfBoundsException if a site is out of 
+   * [1, N] bounds
+   */
+  public boolean wouldPercolate(int[] rows, int[] columns) {
+    if (rows.length != columns.length)
+      throw new IllegalArgumentException("illegal input parameters");
+
+    int mark = checkpoint();
+    try {
+      for (int k = 0; k < rows.length && !percolates; ++k)
+        open(rows[k], columns[k]);
+      return percolates;
+    }
+    finally {
+      rollback(mark);
+    }
+  }
+
+  private boolean isOpen(int siteIndex) {
+    return (open[siteIndex >>> 6] & (1L << siteIndex)) != 0;
+  }
+
+  private int find(int p) {
+    while (parent[p] != p)
+      p = parent[p];
+    return p;
+  }
+
+  private void union(int p, int q) {
+    int i = find(p);
+    int j = find(q);
+    if (i == j)
+      return;
+
+    /* Link the lower ranked root below the other one */
+    if (rank[i] < rank[j]) {
+      int tmp = i;
+      i = j;
+      j = tmp;
+    }
+    int increment = (rank[i] == rank[j]) ? 1 : 0;
+    record(LINK, j, flags[i] | (increment << 2));
+
+    parent[j] = i;
+    flags[i] |= flags[j];
+    rank[i] += (byte) increment;
+  }
+
+  /* Appends an entry to the undo log if a checkpoint is active */
+  private void record(int kind, int a, int b) {
+    if (nMarks == 0)
+      return;
+
+    if (logSize == log.length)
+      log = java.util.Arrays.copyOf(log, 2 * log.length);
+    log[logSize++] = kind;
+    log[logSize++] = a;
+    log[logSize++] = b;
+  }
+
+  /**
+   * Converts grid coordinates to the vector index.
+   * @throws java.lang.IndexOutOfBoundsException if either i or j are 
+   * out of [1, N] bounds
+   */
+  private int coord2index(int i, int j) {
+    /* Validate input params */
+    if (!(i >= 1 && i <= N))
+      throw new IndexOutOfBoundsException("row is out of bounds"); 
+    
+    if (!(j >= 1 && j <= N))
+      throw new IndexOutOfBoundsException("column is out of bounds");    
+  
+    return (i - 1) * N + (j - 1);
+  }
+
+  /* unit testing: opens half of the sites of a grid file, then asks for 
+   * each remaining site whether opening it would make the system 
+   * percolate */
+  public static void main(String[] args) {
+    In in = new In(args[0]);      // input file
+    int N = in.readInt();         // N-by-N percolation system
+
+    CheckpointPercolation cp = new CheckpointPercolation(N);
+    int opened = 0;
+    while (!in.isEmpty() && opened < N*N / 2) {
+      cp.open(in.readInt(), in.readInt());
+      ++opened;
+    }
+
+    int critical = 0;
+    int[] row = new int[1];
+    int[] column = new int[1];
+    for (int i = 1; i <= N; ++i) {
+      for (int j = 1; j <= N; ++j) {
+        row[0] = i;
+        column[0] = j;
+        if (!cp.isOpen(i, j) && cp.wouldPercolate(row, column)) {
+          StdOut.printf("opening (%d, %d) makes the system percolate\n", i, j);
+          ++critical;
+        }
+      }
+    }
+    StdOut.printf("%d sites opened, %s, %d critical sites\n", opened, 
+                  cp.percolates() ? "percolates" : "does not percolate", 
+                  critical);
+  }
+}
@@ -0,0 +1,143 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+For more information, please refer to <http://unlicense.org/>
+*/
+
+/**
+ * Union-find over a primitive int array with path halving and union by 
+ * size. Each root additionally carries two flag bits (TOP and BOTTOM) 
+ * which are OR-ed together when components are merged, so that a 
+ * component can remember whether it touches a virtual node without that 
+ * node actually being part of the structure.
+ */
+public class CompactUF {
+  public static final int TOP = 1;    // component touches the top row 
+  public static final int BOTTOM = 2; // component touches the bottom row 
+
+  private int[] parent; // parent link, or -size for a root 
+  private long[] flags; // two flag bits per element, valid for roots only 
+  private int count;    // number of components 
+
+  /**
+   * Constructor. Creates n singleton components with no flags set. 
+   * @param n number of elements
+   */
+  public CompactUF(int n) {
+    if (n < 0)
+      throw new IllegalArgumentException("illegal input parameters");
+
+    parent = new int[n];
+    java.util.Arrays.fill(parent, -1);
+    flags = new long[(n + 31) >>> 5];
+    count = n;
+  }
+
+  /**
+   * Returns the root of the component containing p. 
+   */
+  public int find(int p) {
+    int q;
+    while ((q = parent[p]) >= 0) {
+      int r = parent[q];
+      if (r < 0) 
+        return q;
+      /* Path halving: point p at its grandparent and skip there */
+      parent[p] = r;
+      p = r;
+    }
+    return p;
+  }
+
+  /**
+   * Checks whether p and q are in the same component. 
+   */
+  public boolean connected(int p, int q) {
+    return find(p) == find(q);
+  }
+
+  /**
+   * Merges components containing p and q. 
+   * @return root of the merged component
+   */
+  public int union(int p, int q) {
+    int i = find(p);
+    int j = find(q);
+    if (i == j) 
+      return i;
+
+    /* Link the smaller tree below the larger one (sizes are negative) */
+    if (parent[i] > parent[j]) { 
+      int tmp = i; 
+      i = j; 
+      j = tmp; 
+    }
+    parent[i] += parent[j];
+    parent[j] = i;
+    setFlags(i, flagsAt(i) | flagsAt(j));
+    --count;
+
+    return i;
+  }
+
+  /**
+   * Returns the number of elements in the component containing p. 
+   */
+  public int size(int p) {
+    return -parent[find(p)];
+  }
+
+  /**
+   * Returns the flags of the component containing p. 
+   */
+  public int flags(int p) {
+    return flagsAt(find(p));
+  }
+
+  /**
+   * Adds flags f to the component containing p. 
+   * @return root of the component
+   */
+  public int addFlags(int p, int f) {
+    int root = find(p);
+    setFlags(root, flagsAt(root) | f);
+    return root;
+  }
+
+  /**
+   * Returns the number of components. 
+   */
+  public int count() {
+    return count;
+  }
+
+  private int flagsAt(int p) {
+    return (int) (flags[p >>> 5] >>> ((p & 31) << 1)) & (TOP | BOTTOM);
+  }
+
+  private void setFlags(int p, int f) {
+    int shift = (p & 31) << 1;
+    flags[p >>> 5] = (flags[p >>> 5] & ~(3L << shift)) | ((long) f << shift);
+  }
+}
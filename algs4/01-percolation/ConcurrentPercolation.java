@@ -0,0 +1,359 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+For more information, please refer to <http://unlicense.org/>
+*/
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Percolation system that may be opened by several threads at once.
+ *
+ * The union-find lives in an AtomicLongArray and is lock-free. Each site 
+ * has one word, its parent in the low half and, for a root, the size of 
+ * its tree in the high half. Roots are linked by size with a 
+ * compareAndSet on the smaller root's word, which fails if that size has 
+ * changed. Sizes of roots only grow, so every link goes from a smaller 
+ * to a larger (size, index) pair as they stand when the child is linked, 
+ * and no cycle can form. Finds never wait for other threads and 
+ * compress paths with best-effort CAS halving. Open sites and 
+ * TOP/BOTTOM flags are bits in AtomicLongArrays.
+ *
+ * Flags are only ever added. A thread adding flags to a root checks 
+ * afterwards that it is still a root, while a thread linking a root reads 
+ * its flags after the link, so flags always reach the current root in 
+ * the end, but they can lag behind the links while opens are in flight. 
+ *
+ * All operations are linearizable. open() takes effect when it returns. 
+ * The queries isOpen(), isFull() and percolates() take effect at a moment 
+ * when no open() is in flight, where the union-find is exactly that of 
+ * the opens completed so far: every open() counts itself in started 
+ * before touching anything and in finished when done, and a query waits 
+ * until the two counts agree, reads, and starts over if another open() 
+ * began meanwhile. Opens never wait for each other or for queries; a 
+ * query waits only while opens are running.
+ */
+public class ConcurrentPercolation {
+  private static final int TOP = 1;
+  private static final int BOTTOM = 2;
+
+  private final int N; // Size of a grid 
+  private final AtomicLongArray node;  // size << 32 | parent, see below 
+  private final AtomicLongArray flags; // two flag bits per site 
+  private final AtomicLongArray open;  // bit-packed open mask 
+  private volatile boolean percolates; // Whether a top-bottom path exists 
+  private final AtomicLong started;    // open() calls begun 
+  private final AtomicLong finished;   // open() calls returned 
+
+  /**
+   * Constructor. Creates and N-by-N grid, with all sites blocked. 
+   * @param N size of a grid
+   */
+  public ConcurrentPercolation(int n) {
+    if (n < 1)
+      throw new IllegalArgumentException("illegal input parameters");
+
+    N = n;
+    node = new AtomicLongArray(N*N);
+    for (int i = 0; i < N*N; ++i)
+      node.set(i, rootWord(1, i));
+    flags = new AtomicLongArray((N*N + 31) >>> 5);
+    open = new AtomicLongArray((N*N + 63) >>> 6);
+    percolates = false;
+    started = new AtomicLong();
+    finished = new AtomicLong();
+  }
+
+  /**
+   * Opens the site (row i, column j) if it is not already. Safe to call 
+   * from any number of threads. 
+   * @throws java.lang.IndexOutOfBoundsException if either i or j are out 
+   * of [1, N] bounds  
+   */
+  public void open(int i, int j) {
+    int siteIndex = coord2index(i, j);
+    started.incrementAndGet();
+    try {
+      long bit = 1L << siteIndex;
+      open.getAndAccumulate(siteIndex >>> 6, bit, (a, b) -> a | b);
+
+      /* The work below is idempotent and is done even if another thread 
+       * opened the site first: that thread may still be connecting it, and 
+       * the site must be connected to its neighbours when this call 
+       * returns. The open bit is set before looking at the neighbours, so 
+       * of two adjacent sites opened at the same time at least one sees 
+       * the other. */
+      int f = 0;
+      if (i == 1) f |= TOP;
+      if (i == N) f |= BOTTOM;
+      if (f != 0)
+        addFlags(siteIndex, f);
+
+      /* Connect this site to open adjacent sites */
+      if (i != 1 && isOpen(siteIndex - N))
+        union(siteIndex, siteIndex - N);
+      if (j != 1 && isOpen(siteIndex - 1))
+        union(siteIndex, siteIndex - 1);
+      if (j != N && isOpen(siteIndex + 1))
+        union(siteIndex, siteIndex + 1);
+      if (i != N && isOpen(siteIndex + N))
+        union(siteIndex, siteIndex + N);
+    }
+    finally {
+      finished.incrementAndGet();
+    }
+  }
+
+  /**
+   * Checks whether site (row i, column j) is open. 
+   * @throws java.lang.IndexOutOfBoundsException if either i or j are out 
+   * of [1, N] bounds
+   */
+  public boolean isOpen(int i, int j) {
+    int p = coord2index(i, j);
+    while (true) {
+      long s = quiescent();
+      boolean open = isOpen(p);
+      if (started.get() == s)
+        return open;
+    }
+  }
+
+  /**
+   * Checks whether site (row i, column j) is full. 
+   * @throws java.lang.IndexOutOfBoundsException if either i or j are out 
+   * of [1, N] bounds
+   */
+  public boolean isFull(int i, int j) {
+    int p = coord2index(i, j);
+    while (true) {
+      long s = quiescent();
+      boolean full = isOpen(p) && isFull(p);
+      if (started.get() == s)
+        return full;
+    }
+  }
+
+  /* Whether the component of p touches the top. Queries call it with no 
+   * open() in flight, when all flags have reached their roots, but a TOP 
+   * flag anywhere on the path means the same and may end the walk early. 
+   * The path is halved on the way, like in find() */
+  private boolean isFull(int p) {
+    while (true) {
+      if ((flagsAt(p) & TOP) != 0)
+        return true;
+      long w = node.get(p);
+      int q = (int) w;
+      if (q == p)
+        return false;
+      if ((flagsAt(q) & TOP) != 0)
+        return true;
+      int r = (int) node.get(q);
+      if (r != q)
+        node.compareAndSet(p, w, r);
+      p = r;
+    }
+  }
+
+  /**
+   * Checks whether the system percolates. 
+   */
+  public boolean percolates() {
+    while (true) {
+      long s = quiescent();
+      boolean result = percolates;
+      if (started.get() == s)
+        return result;
+    }
+  }
+
+  /* Waits for a moment when every open() begun has returned, and returns 
+   * the number begun. finished is read first, so equal counts mean that 
+   * no open() was in flight when started was read. */
+  private long quiescent() {
+    while (true) {
+      long f = finished.get();
+      long s = started.get();
+      if (s == f)
+        return s;
+      Thread.yield();
+    }
+  }
+
+  private boolean isOpen(int siteIndex) {
+    return (open.get(siteIndex >>> 6) & (1L << siteIndex)) != 0;
+  }
+
+  /* word of a root: its size and a link to itself */
+  private static long rootWord(int size, int p) {
+    return (long) size << 32 | p;
+  }
+
+  private int find(int p) {
+    while (true) {
+      long w = node.get(p);
+      int q = (int) w;
+      if (q == p)
+        return p;
+      int r = (int) node.get(q);
+      /* Path halving; losing the race to another thread is harmless */
+      if (r != q)
+        node.compareAndSet(p, w, r);
+      p = r;
+    }
+  }
+
+  private void union(int p, int q) {
+    while (true) {
+      int i = find(p);
+      int j = find(q);
+      if (i == j)
+        return;
+
+      long wi = node.get(i);
+      long wj = node.get(j);
+      if ((int) wi != i || (int) wj != j)
+        continue;
+
+      /* Link the smaller tree below the larger one, ties by index. The 
+       * CAS fails if the child's size changed since it was read */
+      int si = (int) (wi >>> 32);
+      int sj = (int) (wj >>> 32);
+      int child, root, size;
+      long w;
+      if (si < sj || (si == sj && i < j)) {
+        child = i; root = j; size = si; w = wi;
+      }
+      else {
+        child = j; root = i; size = sj; w = wj;
+      }
+      if (node.compareAndSet(child, w, root)) {
+        addSize(root, size);
+        int f = flagsAt(child);
+        if (f != 0)
+          addFlags(root, f);
+        return;
+      }
+    }
+  }
+
+  /* adds size to the root of p, following the root if it gets linked 
+   * below another one meanwhile */
+  private void addSize(int p, int size) {
+    while (true) {
+      long w = node.get(p);
+      if ((int) w != p)
+        p = find(p);
+      else if (node.compareAndSet(p, w, w + ((long) size << 32)))
+        return;
+    }
+  }
+
+  /* ORs flags f into the root of p, following the root if it gets linked 
+   * below another one meanwhile */
+  private void addFlags(int p, int f) {
+    while (true) {
+      int root = find(p);
+      int shift = (root & 31) << 1;
+      long word = flags.getAndAccumulate(root >>> 5, (long) f << shift, 
+                                         (a, b) -> a | b);
+      int now = f | (int) (word >>> shift) & (TOP | BOTTOM);
+      if (now == (TOP | BOTTOM))
+        percolates = true;
+      if ((int) node.get(root) == root)
+        return;
+      f = now;
+    }
+  }
+
+  private int flagsAt(int p) {
+    return (int) (flags.get(p >>> 5) >>> ((p & 31) << 1)) & (TOP | BOTTOM);
+  }
+
+  /**
+   * Converts grid coordinates to the vector index.
+   * @throws java.lang.IndexOutOfBoundsException if either i or j are 
+   * out of [1, N] bounds
+   */
+  private int coord2index(int i, int j) {
+    /* Validate input params */
+    if (!(i >= 1 && i <= N))
+      throw new IndexOutOfBoundsException("row is out of bounds"); 
+    
+    if (!(j >= 1 && j <= N))
+      throw new IndexOutOfBoundsException("column is out of bounds");    
+  
+    return (i - 1) * N + (j - 1);
+  }
+
+  /* unit testing: opens the sites of a random permutation from several 
+   * threads and compares the result against Percolation */
+  public static void main(String[] args) throws InterruptedException {
+    final int N = Integer.parseInt(args[0]); // Size of the matrix 
+    int nThreads = Integer.parseInt(args[1]); // Number of threads 
+    final int nOpen = N*N / 2 + N*N / 10;  // Around the threshold 
+
+    final int[] sites = new int[N*N];
+    for (int k = 0; k < N*N; ++k)
+      sites[k] = k;
+    StdRandom.shuffle(sites);
+
+    final ConcurrentPercolation cp = new ConcurrentPercolation(N);
+    Thread[] threads = new Thread[nThreads];
+    long start = System.nanoTime();
+    for (int t = 0; t < nThreads; ++t) {
+      final int lo = (int) ((long) nOpen * t / nThreads);
+      final int hi = (int) ((long) nOpen * (t + 1) / nThreads);
+      threads[t] = new Thread(new Runnable() {
+        public void run() {
+          for (int k = lo; k < hi; ++k)
+            cp.open(sites[k] / N + 1, sites[k] % N + 1);
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread t : threads)
+      t.join();
+    double elapsed = (System.nanoTime() - start) / 1e9;
+
+    Percolation p = new Percolation(N);
+    for (int k = 0; k < nOpen; ++k)
+      p.open(sites[k] / N + 1, sites[k] % N + 1);
+
+    int mismatches = 0;
+    for (int i = 1; i <= N; ++i)
+      for (int j = 1; j <= N; ++j)
+        if (p.isOpen(i, j) != cp.isOpen(i, j) 
+            || p.isFull(i, j) != cp.isFull(i, j))
+          ++mismatches;
+    if (p.percolates() != cp.percolates())
+      ++mismatches;
+
+    StdOut.printf("opened %d sites on %d threads in %f s, %s, %d mismatches\n",
+                  nOpen, nThreads, elapsed, 
+                  cp.percolates() ? "percolates" : "does not percolate", 
+                  mismatches);
+  }
+}
@@ -0,0 +1,182 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+For more information, please refer to <http://unlicense.org/>
+*/
+
+/**
+ * Immutable lattice in compressed sparse row (CSR) form: the neighbours 
+ * of site v are adjacency[offsets[v]] .. adjacency[offsets[v + 1] - 1]. 
+ * Sites are numbered along a Morton (Z-order) curve, so sites close in 
+ * space are close in memory as well.
+ *
+ * The top sites are those with first coordinate (row, or layer for the 
+ * cubic lattice) 0 and the bottom sites those with the last one.
+ */
+public class Lattice {
+  private final int[] dims;      // extent of each coordinate 
+  private final int[] order;     // order[row-major coordinate index] = site 
+  private final int[] offsets;   // CSR offsets, one per site plus one 
+  private final int[] adjacency; // CSR neighbour lists 
+  private final int[] top;       // sites in the first row/layer 
+  private final int[] bottom;    // sites in the last row/layer 
+
+  private Lattice(int[] dims, int[][] steps) {
+    this.dims = dims;
+    int n = 1;
+    for (int d : dims) {
+      if (d < 1 || (long) n * d > Integer.MAX_VALUE / 8)
+        throw new IllegalArgumentException("illegal input parameters");
+      n *= d;
+    }
+
+    /* Number the sites by Morton code of their coordinates */
+    order = new int[n];
+    long[] keys = new long[n];
+    int[] c = new int[dims.length];
+    for (int k = 0; k < n; ++k) {
+      decode(k, c);
+      keys[k] = (morton(c) << 32) | k;
+    }
+    java.util.Arrays.sort(keys);
+    for (int site = 0; site < n; ++site)
+      order[(int) keys[site]] = site;
+
+    /* Build the CSR adjacency in site order */
+    offsets = new int[n + 1];
+    int[] tmp = new int[n * steps.length];
+    int m = 0;
+    for (int site = 0; site < n; ++site) {
+      offsets[site] = m;
+      decode((int) keys[site], c);
+      for (int[] step : steps) {
+        int k = 0;
+        boolean inside = true;
+        for (int d = 0; d < dims.length && inside; ++d) {
+          int x = c[d] + step[d];
+          inside = x >= 0 && x < dims[d];
+          k = k * dims[d] + x;
+        }
+        if (inside)
+          tmp[m++] = order[k];
+      }
+    }
+    offsets[n] = m;
+    adjacency = java.util.Arrays.copyOf(tmp, m);
+
+    int layer = n / dims[0];
+    top = new int[layer];
+    bottom = new int[layer];
+    for (int k = 0; k < layer; ++k) {
+      top[k] = order[k];
+      bottom[k] = order[n - layer + k];
+    }
+  }
+
+  /**
+   * N-by-N square lattice, four neighbours per site. 
+   */
+  public static Lattice square(int N) {
+    return new Lattice(new int[] { N, N }, 
+                       new int[][] { { -1, 0 }, { 0, -1 }, { 0, 1 }, { 1, 0 } });
+  }
+
+  /**
+   * N-by-N triangular lattice, drawn as a square lattice with one extra 
+   * diagonal, six neighbours per site. 
+   */
+  public static Lattice triangular(int N) {
+    return new Lattice(new int[] { N, N }, 
+                       new int[][] { { -1, 0 }, { -1, 1 }, { 0, -1 }, 
+                                     { 0, 1 }, { 1, -1 }, { 1, 0 } });
+  }
+
+  /**
+   * L-by-L-by-L simple cubic lattice, six neighbours per site. 
+   */
+  public static Lattice cubic(int L) {
+    return new Lattice(new int[] { L, L, L }, 
+                       new int[][] { { -1, 0, 0 }, { 0, -1, 0 }, { 0, 0, -1 },
+                                     { 0, 0, 1 }, { 0, 1, 0 }, { 1, 0, 0 } });
+  }
+
+  /**
+   * Number of sites. 
+   */
+  public int sites() {
+    return order.length;
+  }
+
+  /**
+   * Site with the given zero-based coordinates, row (or layer) first. 
+   * @throws java.lang.IndexOutOfBoundsException if the coordinates are 
+   * out of bounds
+   */
+  public int site(int... coordinates) {
+    if (coordinates.length != dims.length)
+      throw new IllegalArgumentException("wrong number of coordinates");
+
+    int k = 0;
+    for (int d = 0; d < dims.length; ++d) {
+      if (coordinates[d] < 0 || coordinates[d] >= dims[d])
+        throw new IndexOutOfBoundsException("coordinate is out of bounds");
+      k = k * dims[d] + coordinates[d];
+    }
+    return order[k];
+  }
+
+  /* CSR arrays and boundaries, shared with LatticePercolation */
+  int[] offsets() {
+    return offsets;
+  }
+
+  int[] adjacency() {
+    return adjacency;
+  }
+
+  int[] top() {
+    return top;
+  }
+
+  int[] bottom() {
+    return bottom;
+  }
+
+  /* Row-major index k to coordinates */
+  private void decode(int k, int[] c) {
+    for (int d = dims.length - 1; d >= 0; --d) {
+      c[d] = k % dims[d];
+      k /= dims[d];
+    }
+  }
+
+  /* Interleaves the bits of the coordinates */
+  private static long morton(int[] c) {
+    long code = 0;
+    for (int bit = 0; bit < 31; ++bit)
+      for (int d = 0; d < c.length; ++d)
+        code |= (long) ((c[d] >>> bit) & 1) << (bit * c.length + d);
+    return code;
+  }
+}
@@ -0,0 +1,220 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+For more information, please refer to <http://unlicense.org/>
+*/
+
+import java.util.SplittableRandom;
+
+/**
+ * Site or bond percolation on an arbitrary Lattice. The lattice comes as 
+ * a CSR adjacency, so opening a site is one pass over a contiguous slice 
+ * of neighbours, and the union-find is the same CompactUF with TOP/BOTTOM 
+ * flag bits used by Percolation.
+ *
+ * In site mode sites are opened one by one. In bond mode all sites are 
+ * open and the bonds between neighbours are opened instead.
+ */
+public class LatticePercolation {
+  private final Lattice lattice;
+  private final int[] offsets;   // CSR offsets of the lattice 
+  private final int[] adjacency; // CSR neighbour lists of the lattice 
+  private final boolean bond;    // Whether bonds rather than sites open 
+  private final long[] open;     // bit-packed open sites (site mode) 
+  private final CompactUF uf;    // union-find object over the sites 
+  private boolean percolates;    // Whether a top-bottom path exists 
+
+  /**
+   * Constructor. Creates a system on the given lattice with all sites 
+   * (site mode) or all bonds (bond mode) blocked. 
+   * @param lattice the lattice
+   * @param bond true for bond percolation, false for site percolation
+   */
+  public LatticePercolation(Lattice lattice, boolean bond) {
+    this.lattice = lattice;
+    this.bond = bond;
+    offsets = lattice.offsets();
+    adjacency = lattice.adjacency();
+    open = bond ? null : new long[(lattice.sites() + 63) >>> 6];
+    uf = new CompactUF(lattice.sites());
+
+    /* Blocked sites are singletons, so their flags are only picked up by 
+     * a component once the site joins it */
+    for (int v : lattice.top())
+      uf.addFlags(v, CompactUF.TOP);
+    for (int v : lattice.bottom())
+      uf.addFlags(v, CompactUF.BOTTOM);
+    percolates = bond && uf.flags(lattice.top()[0]) 
+                         == (CompactUF.TOP | CompactUF.BOTTOM);
+  }
+
+  /**
+   * The lattice of this system. 
+   */
+  public Lattice lattice() {
+    return lattice;
+  }
+
+  /**
+   * Opens site v if it is not already. 
+   * @throws java.lang.UnsupportedOperationException in bond mode
+   * @throws java.lang.IndexOutOfBoundsException if v is not a site
+   */
+  public void openSite(int v) {
+    if (bond)
+      throw new UnsupportedOperationException("bond percolation");
+    if (isOpen(v))
+      return;
+
+    open[v >>> 6] |= 1L << v;
+    for (int e = offsets[v]; e < offsets[v + 1]; ++e)
+      if (isOpen(adjacency[e]))
+        uf.union(v, adjacency[e]);
+    check(v);
+  }
+
+  /**
+   * Opens the bond between neighbouring sites u and v. 
+   * @throws java.lang.UnsupportedOperationException in site mode
+   * @throws java.lang.IllegalArgumentException if u and v are not 
+   * neighbours
+   */
+  public void openBond(int u, int v) {
+    if (!bond)
+      throw new UnsupportedOperationException("site percolation");
+
+    boolean neighbours = false;
+    for (int e = offsets[u]; e < offsets[u + 1] && !neighbours; ++e)
+      neighbours = adjacency[e] == v;
+    if (!neighbours)
+      throw new IllegalArgumentException("sites are not neighbours");
+
+    uf.union(u, v);
+    check(u);
+  }
+
+  /**
+   * Checks whether site v is open. Always true in bond mode. 
+   * @throws java.lang.IndexOutOfBoundsException if v is not a site
+   */
+  public boolean isOpen(int v) {
+    if (bond) {
+      if (v < 0 || v >= lattice.sites())
+        throw new IndexOutOfBoundsException("site is out of bounds");
+      return true;
+    }
+    return (open[v >>> 6] & (1L << v)) != 0;
+  }
+
+  /**
+   * Checks whether site v is open and connected to the top. 
+   * @throws java.lang.IndexOutOfBoundsException if v is not a site
+   */
+  public boolean isFull(int v) {
+    return isOpen(v) && (uf.flags(v) & CompactUF.TOP) != 0;
+  }
+
+  /**
+   * Checks whether the system percolates. 
+   */
+  public boolean percolates() {
+    return percolates;
+  }
+
+  private void check(int v) {
+    if (uf.flags(v) == (CompactUF.TOP | CompactUF.BOTTOM))
+      percolates = true;
+  }
+
+  /* Opens sites or bonds in random order until the system percolates, 
+   * returns the fraction opened */
+  private static double trial(Lattice lattice, boolean bond, 
+                              SplittableRandom rng) {
+    LatticePercolation lp = new LatticePercolation(lattice, bond);
+    int[] offsets = lattice.offsets();
+    int[] adjacency = lattice.adjacency();
+
+    /* Elements are sites, or bonds as CSR slots with u < v */
+    int n = 0;
+    int[] elements;
+    if (bond) {
+      elements = new int[adjacency.length / 2];
+      for (int u = 0; u < lattice.sites(); ++u)
+        for (int e = offsets[u]; e < offsets[u + 1]; ++e)
+          if (u < adjacency[e])
+            elements[n++] = e;
+    }
+    else {
+      elements = new int[lattice.sites()];
+      for (n = 0; n < elements.length; ++n)
+        elements[n] = n;
+    }
+
+    int[] owner = bond ? new int[adjacency.length] : null;
+    if (bond)
+      for (int u = 0; u < lattice.sites(); ++u)
+        for (int e = offsets[u]; e < offsets[u + 1]; ++e)
+          owner[e] = u;
+
+    int counter = 0;
+    while (!lp.percolates() && counter < n) {
+      int r = rng.nextInt(counter, n);
+      int x = elements[r];
+      elements[r] = elements[counter];
+      elements[counter] = x;
+      ++counter;
+
+      if (bond) 
+        lp.openBond(owner[x], adjacency[x]);
+      else
+        lp.openSite(x);
+    }
+    return (double) counter / n;
+  }
+
+  /**
+   * Prints the mean percolation threshold over T trials. 
+   * Usage: LatticePercolation square|triangular|cubic L site|bond T [seed]
+   */
+  public static void main(String[] args) {
+    int L = Integer.parseInt(args[1]);
+    Lattice lattice;
+    if (args[0].equals("cubic"))
+      lattice = Lattice.cubic(L);
+    else if (args[0].equals("triangular"))
+      lattice = Lattice.triangular(L);
+    else
+      lattice = Lattice.square(L);
+    boolean bond = args[2].equals("bond");
+    int T = Integer.parseInt(args[3]);
+    SplittableRandom rng = new SplittableRandom(
+        args.length > 4 ? Long.parseLong(args[4]) : System.nanoTime());
+
+    double sum = 0;
+    for (int t = 0; t < T; ++t)
+      sum += trial(lattice, bond, rng);
+    StdOut.printf("%s %s percolation, L = %d: mean threshold = %f\n", 
+                  args[0], args[2], L, sum / T);
+  }
+}
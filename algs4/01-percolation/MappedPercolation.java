@@ -0,0 +1,386 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+For more information, please refer to <http://unlicense.org/>
+*/
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Percolation system whose state lives off-heap in memory-mapped files, 
+ * for grids too large for the heap or for int indexing (N > 46340). 
+ * Sites are indexed with longs.
+ *
+ * The working directory holds two files, both created sparse and all 
+ * zero, which is the initial state:
+ *  - parent.bin: one long per site; p > 0 links to site p - 1, p <= 0 
+ *    marks a root of a component with 1 - p sites.
+ *  - flags.bin: one byte per site with the OPEN bit, and the TOP/BOTTOM 
+ *    bits which are valid for roots only.
+ *
+ * The binary grid format read by load() is: int magic "PERC", int 
+ * version 1, long N, then N*N bits, one per site in row-major order, 
+ * least significant bit first, 1 = open. The ints and the long are 
+ * big-endian, as DataOutputStream writes them, so a grid file reads the 
+ * same on every machine; the state files use the same order. It is 
+ * mapped read-only and the bits are used in place, no text is parsed.
+ */
+public class MappedPercolation implements Closeable {
+  public static final int GRID_MAGIC = 0x50455243; // "PERC" 
+  public static final int GRID_VERSION = 1;
+  private static final int GRID_HEADER = 16;       // bytes before the bits 
+
+  private static final int OPEN = 1;
+  private static final int TOP = 2;
+  private static final int BOTTOM = 4;
+
+  private int N; // Size of a grid 
+  private MappedFile parent; // parent links and sizes, 8 bytes per site 
+  private MappedFile flags;  // OPEN/TOP/BOTTOM bits, 1 byte per site 
+  private boolean percolates; // Whether a top-bottom path exists 
+
+  /**
+   * Constructor. Creates an N-by-N grid, with all sites blocked, keeping 
+   * its state in files in directory dir. Existing state files there are 
+   * overwritten. 
+   * @param N size of a grid
+   * @param dir working directory
+   * @throws java.io.IOException if the state files can not be created
+   */
+  public MappedPercolation(int n, File dir) throws IOException {
+    if (n < 1)
+      throw new IllegalArgumentException("illegal input parameters");
+
+    N = n;
+    long sites = (long) N * N;
+    parent = new MappedFile(new File(dir, "parent.bin"), 8 * sites, true);
+    try {
+      flags = new MappedFile(new File(dir, "flags.bin"), sites, true);
+    }
+    catch (IOException e) {
+      parent.close();
+      throw e;
+    }
+    percolates = false;
+  }
+
+  /**
+   * Creates a system from a binary grid file with all its open sites 
+   * opened. 
+   * @param grid binary grid file
+   * @param dir working directory
+   * @throws java.io.IOException if the grid file is malformed or a file 
+   * can not be accessed
+   */
+  public static MappedPercolation load(File grid, File dir) 
+      throws IOException {
+    MappedFile bits = new MappedFile(grid, -1, false);
+    try {
+      if (bits.length() < GRID_HEADER 
+          || bits.getInt(0) != GRID_MAGIC || bits.getInt(4) != GRID_VERSION)
+        throw new IOException(grid + " is not a percolation grid file");
+      long n = bits.getLong(8);
+      if (n < 1 || n > Integer.MAX_VALUE 
+          || bits.length() < GRID_HEADER + (n * n + 7) / 8)
+        throw new IOException(grid + " is truncated or has a bad size");
+
+      MappedPercolation mp = new MappedPercolation((int) n, dir);
+      long nBytes = (n * n + 7) / 8;
+      for (long b = 0; b < nBytes; ++b) {
+        int bitsOfByte = bits.get(GRID_HEADER + b) & 0xff;
+        while (bitsOfByte != 0) {
+          int k = Integer.numberOfTrailingZeros(bitsOfByte);
+          long siteIndex = 8 * b + k;
+          if (siteIndex < n * n)
+            mp.open((int) (siteIndex / n) + 1, (int) (siteIndex % n) + 1);
+          bitsOfByte &= bitsOfByte - 1;
+        }
+      }
+      return mp;
+    }
+    finally {
+      bits.close();
+    }
+  }
+
+  /**
+   * Converts a text file in the format read by PercolationVisualizer 
+   * (N followed by the sites to open) into a binary grid file. The 
+   * output is written through a mapping, so N*N is not limited by the 
+   * heap. 
+   * @throws java.io.IOException if the output can not be written
+   */
+  public static void convert(In in, File grid) throws IOException {
+    long n = in.readInt();
+    MappedFile bits = new MappedFile(grid, GRID_HEADER + (n * n + 7) / 8, 
+                                     true);
+    try {
+      bits.putInt(0, GRID_MAGIC);
+      bits.putInt(4, GRID_VERSION);
+      bits.putLong(8, n);
+      while (!in.isEmpty()) {
+        long i = in.readInt();
+        long j = in.readInt();
+        if (i < 1 || i > n || j < 1 || j > n)
+          throw new IndexOutOfBoundsException("site is out of bounds");
+        long siteIndex = (i - 1) * n + (j - 1);
+        long b = GRID_HEADER + siteIndex / 8;
+        bits.put(b, (byte) (bits.get(b) | (1 << (siteIndex % 8))));
+      }
+    }
+    finally {
+      bits.close();
+    }
+  }
+
+  /**
+   * Opens the site (row i, column j) if it is not already. 
+   * @throws java.lang.IndexOutOfBoundsException if either i or j are out 
+   * of [1, N] bounds  
+   */
+  public void open(int i, int j) {
+    long siteIndex = coord2index(i, j);
+    int f = flags.get(siteIndex);
+    if ((f & OPEN) != 0)
+      return;
+    flags.put(siteIndex, (byte) (f | OPEN));
+
+    /* A blocked site is a singleton root, so its flags are its own */
+    f = 0;
+    if (i == 1) f |= TOP;
+    if (i == N) f |= BOTTOM;
+    if (f != 0)
+      flags.put(siteIndex, (byte) (OPEN | f));
+
+    /* Connect this site to open adjacent sites */
+    if (i != 1 && isOpen(siteIndex - N))
+      union(siteIndex, siteIndex - N);
+    if (j != 1 && isOpen(siteIndex - 1))
+      union(siteIndex, siteIndex - 1);
+    if (j != N && isOpen(siteIndex + 1))
+      union(siteIndex, siteIndex + 1);
+    if (i != N && isOpen(siteIndex + N))
+      union(siteIndex, siteIndex + N);
+
+    if ((flags.get(find(siteIndex)) & (TOP | BOTTOM)) == (TOP | BOTTOM))
+      percolates = true;
+  }
+
+  /**
+   * Checks whether site (row i, column j) is open. 
+   * @throws java.lang.IndexOutOfBoundsException if either i or j are out 
+   * of [1, N] bounds
+   */
+  public boolean isOpen(int i, int j) {
+    return isOpen(coord2index(i, j));
+  }
+
+  /**
+   * Checks whether site (row i, column j) is full. 
+   * @throws java.lang.IndexOutOfBoundsException if either i or j are out 
+   * of [1, N] bounds
+   */
+  public boolean isFull(int i, int j) {
+    long siteIndex = coord2index(i, j);
+    return isOpen(siteIndex) && (flags.get(find(siteIndex)) & TOP) != 0;
+  }
+
+  /**
+   * Checks whether the system percolates. 
+   */
+  public boolean percolates() {
+    return percolates;
+  }
+
+  /**
+   * Flushes the state files and releases them. 
+   * @throws java.io.IOException if the files can not be closed
+   */
+  public void close() throws IOException {
+    try {
+      parent.close();
+    }
+    finally {
+      flags.close();
+    }
+  }
+
+  private boolean isOpen(long siteIndex) {
+    return (flags.get(siteIndex) & OPEN) != 0;
+  }
+
+  private long find(long p) {
+    long q;
+    while ((q = parent.getLong(8 * p)) > 0) {
+      long r = parent.getLong(8 * (q - 1));
+      if (r <= 0) 
+        return q - 1;
+      /* Path halving: point p at its grandparent and skip there */
+      parent.putLong(8 * p, r);
+      p = r - 1;
+    }
+    return p;
+  }
+
+  private void union(long p, long q) {
+    long i = find(p);
+    long j = find(q);
+    if (i == j)
+      return;
+
+    /* Link the smaller tree below the larger one; roots hold 1 - size */
+    long si = parent.getLong(8 * i);
+    long sj = parent.getLong(8 * j);
+    if (si > sj) {
+      long tmp = i;
+      i = j;
+      j = tmp;
+    }
+    parent.putLong(8 * i, si + sj - 1);
+    parent.putLong(8 * j, i + 1);
+    flags.put(i, (byte) (flags.get(i) | flags.get(j)));
+  }
+
+  /**
+   * Converts grid coordinates to the vector index.
+   * @throws java.lang.IndexOutOfBoundsException if either i or j are 
+   * out of [1, N] bounds
+   */
+  private long coord2index(int i, int j) {
+    /* Validate input params */
+    if (!(i >= 1 && i <= N))
+      throw new IndexOutOfBoundsException("row is out of bounds"); 
+    
+    if (!(j >= 1 && j <= N))
+      throw new IndexOutOfBoundsException("column is out of bounds");    
+  
+    return (long) (i - 1) * N + (j - 1);
+  }
+
+  /* A file mapped in 1 GB segments, addressed with long byte offsets. 
+   * Values of up to 8 bytes at aligned offsets never straddle segments. */
+  private static class MappedFile implements Closeable {
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private RandomAccessFile file;
+    private MappedByteBuffer[] segments;
+    private long length;
+
+    /* Maps an existing file read-only if length < 0, otherwise creates 
+     * (or truncates) it with the given length, all zero */
+    MappedFile(File f, long length, boolean create) throws IOException {
+      file = new RandomAccessFile(f, create ? "rw" : "r");
+      try {
+        if (create) {
+          file.setLength(0);
+          file.setLength(length);
+        }
+        this.length = file.length();
+
+        FileChannel.MapMode mode = create ? FileChannel.MapMode.READ_WRITE
+                                          : FileChannel.MapMode.READ_ONLY;
+        int n = (int) ((this.length + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        segments = new MappedByteBuffer[n];
+        for (int s = 0; s < n; ++s) {
+          long start = (long) s << SEGMENT_SHIFT;
+          segments[s] = file.getChannel().map(mode, start, 
+              Math.min(SEGMENT_MASK + 1, this.length - start));
+        }
+      }
+      catch (IOException e) {
+        file.close();
+        throw e;
+      }
+    }
+
+    long length() {
+      return length;
+    }
+
+    byte get(long offset) {
+      return segments[(int) (offset >>> SEGMENT_SHIFT)]
+             .get((int) (offset & SEGMENT_MASK));
+    }
+
+    void put(long offset, byte value) {
+      segments[(int) (offset >>> SEGMENT_SHIFT)]
+          .put((int) (offset & SEGMENT_MASK), value);
+    }
+
+    int getInt(long offset) {
+      return segments[(int) (offset >>> SEGMENT_SHIFT)]
+             .getInt((int) (offset & SEGMENT_MASK));
+    }
+
+    void putInt(long offset, int value) {
+      segments[(int) (offset >>> SEGMENT_SHIFT)]
+          .putInt((int) (offset & SEGMENT_MASK), value);
+    }
+
+    long getLong(long offset) {
+      return segments[(int) (offset >>> SEGMENT_SHIFT)]
+             .getLong((int) (offset & SEGMENT_MASK));
+    }
+
+    void putLong(long offset, long value) {
+      segments[(int) (offset >>> SEGMENT_SHIFT)]
+          .putLong((int) (offset & SEGMENT_MASK), value);
+    }
+
+    public void close() throws IOException {
+      if (file.getChannel().isOpen() && segments.length > 0 
+          && !segments[0].isReadOnly())
+        for (MappedByteBuffer segment : segments)
+          segment.force();
+      file.close();
+    }
+  }
+
+  /**
+   * Usage: 
+   *   MappedPercolation convert input.txt grid.bin 
+   *   MappedPercolation check grid.bin workdir 
+   */
+  public static void main(String[] args) throws IOException {
+    if (args[0].equals("convert")) {
+      convert(new In(args[1]), new File(args[2]));
+      return;
+    }
+
+    MappedPercolation mp = load(new File(args[1]), new File(args[2]));
+    try {
+      StdOut.printf("%s\n", mp.percolates() ? "percolates" 
+                                            : "does not percolate");
+    }
+    finally {
+      mp.close();
+    }
+  }
+}
@@ -26,12 +26,13 @@ For more information, please refer to <http://unlicense.org/>
 */
 
 public class Percolation {
-  private boolean[]  grid; // grid of sites 
-  private WeightedQuickUnionUF ufPercolates;  // union-find object (percolates) 
-  private WeightedQuickUnionUF ufFull;  // union-find object (isFull)
+  private long[] open; // bit-packed open mask, one bit per site 
+  private CompactUF uf; // union-find object over the sites only 
   private int N; // Size of a grid 
-  private int sourceIndex; // Index of the source site 
-  private int sinkIndex; // Index of the source site 
+  private boolean percolates; // Whether a top-bottom path is known to exist 
+  private int openSites; // Number of open sites 
+  private int largest; // Size of the largest cluster 
+  private int spanning; // Size of the largest spanning cluster 
     
   /**
    * Constructor. Creates and N-by-N grid, with all sites blocked. 
@@ -40,24 +41,24 @@ public class Percolation {
   public Percolation(int n) {
     if (n < 1)
       throw new IllegalArgumentException("illegal input parameters");
+    /* Site indices are ints, N*N must not overflow */
+    if (n > 46340)
+      throw new IllegalArgumentException("grid is too large, use MappedPercolation");
 
     N = n;
-    /* Initialize the grid */
-    grid = new boolean[N*N];    
-    for (int i = 0; i < N*N; ++i)
-      grid[i] = false;
-    
-    /* Initialize the union-find object. Using two extra elements as  
-     * virtual nodes to which all top row elements are connected. This
-     * object will be used to check whether the system percolates. */  
-    ufPercolates = new WeightedQuickUnionUF(N*N + 2);
-    /* Another UF object (with only top virtual node) to deal with 
-     * backwashing. This object will be used to check whether the site 
-     * is full. */
-    ufFull = new WeightedQuickUnionUF(N*N + 1); 
-  
-    sourceIndex = N*N;
-    sinkIndex = sourceIndex + 1;
+    /* All sites start blocked (zero bits) */
+    open = new long[(N*N + 63) >>> 6];
+
+    /* A single union-find object without virtual nodes. Instead of 
+     * connecting to virtual source and sink nodes, every root carries 
+     * TOP/BOTTOM flag bits. A site is full iff its own component touches 
+     * the top, so there is no backwashing and no need for a second 
+     * union-find object. */
+    uf = new CompactUF(N*N);
+    percolates = false;
+    openSites = 0;
+    largest = 0;
+    spanning = 0;
   }
   /**
    * Opens the site (row i, column j) if it is not already. 
@@ -67,41 +68,44 @@ public class Percolation {
   public void open(int i, int j) {
     /* Open the site itself */
     int siteIndex = coord2index(i, j);
-    grid[siteIndex] = true;
-    
+    if (isOpen(siteIndex))
+      return;
+    open[siteIndex >>> 6] |= 1L << siteIndex;
+    ++openSites;
+
+    /* Mark the rows touching the virtual source and sink */
+    int flags = 0;
+    if (i == 1) flags |= CompactUF.TOP;
+    if (i == N) flags |= CompactUF.BOTTOM;
+    if (flags != 0)
+      uf.addFlags(siteIndex, flags);
+
     /* Connect this site to open adjacent sites */
     
     /* Up */
-    if (i == 1) { 
-      // Union with both sources 
-      ufPercolates.union(siteIndex, sourceIndex); 
-      ufFull.union(siteIndex, sourceIndex); 
-    }
-    else 
-    if (i != 1 && isOpen(i - 1, j)) {
-      ufPercolates.union(siteIndex, coord2index(i-1, j));
-      ufFull.union(siteIndex, coord2index(i-1, j));
-    }
+    if (i != 1 && isOpen(siteIndex - N))
+      uf.union(siteIndex, siteIndex - N);
 
     /* Left */
-    if (j != 1 && isOpen(i, j - 1)) {
-      ufPercolates.union(siteIndex, coord2index(i, j - 1));
-      ufFull.union(siteIndex, coord2index(i, j - 1));
-    }
+    if (j != 1 && isOpen(siteIndex - 1))
+      uf.union(siteIndex, siteIndex - 1);
 
     /* Right */
-    if (j != N && isOpen(i, j + 1)) {
-      ufPercolates.union(siteIndex, coord2index(i, j + 1));
-      ufFull.union(siteIndex, coord2index(i, j + 1));
-    }
+    if (j != N && isOpen(siteIndex + 1))
+      uf.union(siteIndex, siteIndex + 1);
 
     /* Down */
-    if (i == N)  
-      ufPercolates.union(siteIndex, sinkIndex); // Union with sink
-    else 
-    if (i != N && isOpen(i + 1, j)) {
-      ufPercolates.union(siteIndex, coord2index(i+1, j));
-      ufFull.union(siteIndex, coord2index(i+1, j));
+    if (i != N && isOpen(siteIndex + N))
+      uf.union(siteIndex, siteIndex + N);
+
+    /* Only the cluster of this site changed, and clusters only grow */
+    int size = uf.size(siteIndex);
+    if (size > largest)
+      largest = size;
+    if (uf.flags(siteIndex) == (CompactUF.TOP | CompactUF.BOTTOM)) {
+      percolates = true;
+      if (size > spanning)
+        spanning = size;
     }
   }
   /**
@@ -110,7 +114,7 @@ public class Percolation {
    * of [1, N] bounds
    */
   public boolean isOpen(int i, int j) {
-    return grid[coord2index(i, j)];
+    return isOpen(coord2index(i, j));
   }
 
    /**
@@ -119,16 +123,79 @@ public class Percolation {
    * of [1, N] bounds
    */
   public boolean isFull(int i, int j) {
-    return ufFull.connected(sourceIndex, coord2index(i, j));
+    int siteIndex = coord2index(i, j);
+    return isOpen(siteIndex) 
+           && (uf.flags(siteIndex) & CompactUF.TOP) != 0;
   }
 
   /**
    * Checks whether the system percolates. 
    */
   public boolean percolates() {
-    return ufPercolates.connected(sourceIndex, sinkIndex);
+    return percolates;
   }
   
+  /**
+   * Writes all full sites into bitmap in a single pass. Site (row i, 
+   * column j) maps to bit k % 64 of bitmap[k / 64], where 
+   * k = (i - 1) * N + (j - 1). Blocked stretches of the grid are skipped 
+   * a word at a time. 
+   * @throws java.lang.IllegalArgumentException if bitmap has fewer than 
+   * (N*N + 63) / 64 words
+   */
+  public void fullSites(long[] bitmap) {
+    if (bitmap.length < open.length)
+      throw new IllegalArgumentException("bitmap is too small");
+
+    for (int w = 0; w < open.length; ++w) {
+      long bits = open[w];
+      long full = 0;
+      while (bits != 0) {
+        long lowest = bits & -bits;
+        int siteIndex = (w << 6) + Long.numberOfTrailingZeros(bits);
+        if ((uf.flags(siteIndex) & CompactUF.TOP) != 0)
+          full |= lowest;
+        bits ^= lowest;
+      }
+      bitmap[w] = full;
+    }
+  }
+
+  /**
+   * Number of open sites. 
+   */
+  public int numberOfOpenSites() {
+    return openSites;
+  }
+
+  /**
+   * Number of clusters of open sites. 
+   */
+  public int numberOfClusters() {
+    /* Every successful union merged two clusters of open sites */
+    return openSites - (N*N - uf.count());
+  }
+
+  /**
+   * Number of sites in the largest cluster, 0 if no site is open. 
+   */
+  public int largestCluster() {
+    return largest;
+  }
+
+  /**
+   * Number of sites in the largest cluster connecting the top and the 
+   * bottom rows, 0 if the system does not percolate. 
+   */
+  public int spanningCluster() {
+    return spanning;
+  }
+
+  /* Checks the open bit of the site with the given vector index */
+  private boolean isOpen(int siteIndex) {
+    return (open[siteIndex >>> 6] & (1L << siteIndex)) != 0;
+  }
+
   /**
    * Converts grid coordinates to the vector index.
    * @throws java.lang.IndexOutOfBoundsException if either i or j are 
@@ -0,0 +1,153 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+For more information, please refer to <http://unlicense.org/>
+*/
+
+/**
+ * Spanning probability curve P(p) of an N-by-N grid in which every site 
+ * is open with probability p, estimated from a single batch of 
+ * permutation (Newman-Ziff) trials.
+ *
+ * Each trial opens the sites in a random order and records the number of 
+ * open sites n at which the system first percolates. Since opening more 
+ * sites never breaks a spanning path, the fraction of trials that 
+ * percolated with at most n open sites estimates P_n, the spanning 
+ * probability with exactly n open sites. P(p) is then the binomial 
+ * average of P_n over n, so a single set of trials yields P(p) for any 
+ * number of p values.
+ */
+public class PercolationCurve {
+  private static final double EPSILON = 1e-17; // Negligible binomial weight 
+
+  private int M;          // Number of sites 
+  private double[] pn;    // pn[n] = spanning probability with n open sites 
+  private PercolationStats stats; // Threshold statistics of the same trials 
+
+  /**
+   * Constructor. Performs T permutation experiments on an N-by-N grid.
+   * @param N size of the grid 
+   * @param T number of experiments 
+   * @param seed seed of the master generator
+   * @param nThreads number of worker threads
+   */
+  public PercolationCurve(int N, int T, long seed, int nThreads) {
+    if (N < 1 || T < 1 || nThreads < 1)
+      throw new IllegalArgumentException("illegal input parameters");
+
+    M = N*N;
+    int[] histogram = new int[M + 1];
+    stats = new PercolationStats(N, T, seed, nThreads, histogram);
+
+    /* Cumulative fraction of trials that percolated by n open sites */
+    pn = new double[M + 1];
+    long percolated = 0;
+    for (int n = 0; n <= M; ++n) {
+      percolated += histogram[n];
+      pn[n] = (double) percolated / T;
+    }
+  }
+
+  /**
+   * Estimated probability that the grid percolates with exactly n open 
+   * sites.
+   * @throws java.lang.IndexOutOfBoundsException if n is out of [0, N*N]
+   */
+  public double probability(int n) {
+    if (n < 0 || n > M)
+      throw new IndexOutOfBoundsException("n is out of bounds");
+
+    return pn[n];
+  }
+
+  /**
+   * Estimated probability that the grid percolates when every site is 
+   * open with probability p. 
+   * @throws java.lang.IllegalArgumentException if p is out of [0, 1]
+   */
+  public double probability(double p) {
+    if (!(p >= 0 && p <= 1))
+      throw new IllegalArgumentException("p is out of bounds");
+    if (p == 0) return pn[0];
+    if (p == 1) return pn[M];
+
+    /* Walk out from the mode of Binomial(M, p) in both directions using 
+     * the ratio of consecutive terms. Weights are relative to the mode, 
+     * which avoids overflow, and the walk stops once they become 
+     * negligible, so only O(sqrt(M)) terms are visited. */
+    int mode = (int) Math.min(M, Math.floor((M + 1) * p));
+    double odds = p / (1 - p);
+    double total = 1;
+    double sum = pn[mode];
+
+    double w = 1;
+    for (int n = mode; n < M; ++n) {
+      w *= odds * (M - n) / (n + 1);
+      if (w < EPSILON) break;
+      total += w;
+      sum += w * pn[n + 1];
+    }
+
+    w = 1;
+    for (int n = mode; n > 0; --n) {
+      w *= n / (odds * (M - n + 1));
+      if (w < EPSILON) break;
+      total += w;
+      sum += w * pn[n - 1];
+    }
+
+    return sum / total;
+  }
+
+  /**
+   * Estimated percolation probability for each of the given p values.
+   */
+  public double[] probabilities(double[] p) {
+    double[] result = new double[p.length];
+    for (int i = 0; i < p.length; ++i)
+      result[i] = probability(p[i]);
+    return result;
+  }
+
+  /**
+   * Threshold statistics of the experiments behind this curve.
+   */
+  public PercolationStats stats() {
+    return stats;
+  }
+
+  public static void main(String[] args) {
+    int N = Integer.parseInt(args[0]); // Size of the matrix 
+    int T = Integer.parseInt(args[1]); // Number of trials 
+    int steps = Integer.parseInt(args[2]); // Number of p intervals 
+    int nThreads = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+    long seed = args.length > 4 ? Long.parseLong(args[4]) : System.nanoTime();
+
+    PercolationCurve curve = new PercolationCurve(N, T, seed, nThreads);
+    for (int i = 0; i <= steps; ++i) {
+      double p = (double) i / steps;
+      StdOut.printf("%f %f\n", p, curve.probability(p));
+    }
+  }
+}
@@ -25,9 +25,16 @@ OTHER DEALINGS IN THE SOFTWARE.
 For more information, please refer to <http://unlicense.org/>
 */
 
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 public class PercolationStats {
-  private double nTrials;
-  private double[] threshold;
+  private static final int MIN_TRIALS = 30; // Before an early stop 
+
+  private int nTrials;  // Number of thresholds accumulated 
+  private double mean;  // Running mean of the thresholds 
+  private double m2;    // Running sum of squared deviations from the mean 
 
   /**
   * Constructor. Performs T independent computational experiments on an N-by-N grid. 
@@ -35,46 +42,223 @@ public class PercolationStats {
   * @param T number of experiments 
   */
   public PercolationStats(int N, int T) {
+    this(N, T, false);
+  }
+
+  /**
+  * Constructor. Performs T independent computational experiments on an N-by-N grid. 
+  * @param N size of the grid 
+  * @param T number of experiments 
+  * @param permute if true, each experiment opens the sites of a random 
+  * permutation in order (Newman-Ziff) instead of drawing random sites 
+  * and discarding the ones that are already open
+  */
+  public PercolationStats(int N, int T, boolean permute) {
      if (N < 1 || T < 1)
         throw new IllegalArgumentException("illegal input parameters");
 
-
-    threshold = new double[T];
-    nTrials = T;
+    if (permute) {
+      /* Derive the seed from StdRandom so that StdRandom.setSeed() still 
+       * makes the run reproducible */
+      runSeeded(N, T, 0, StdRandom.uniform(Integer.MAX_VALUE), 1, null);
+      return;
+    }
 
     for (int i = 0; i < T; ++i) {
-      int counter = 0;
-      Percolation p = new Percolation(N);
-    
-      /* Start simulation by openning sites before the instance percolates */
-      while (!p.percolates()) {
-        int row = StdRandom.uniform(1, N + 1);
-        int column = StdRandom.uniform(1, N + 1);
-      
-        if (!p.isOpen(row, column)) {
-          //StdOut.printf("Openning row: %d column: %d\n", row, column);
-          p.open(row, column);
-          ++counter;
+      int counter = randomTrial(N);
+
+      //StdOut.printf("The system percolated at: %d\n", counter);
+      add((double) counter / (N*N));
+    }
+  }
+
+  /**
+  * Constructor. Performs T independent permutation experiments on an N-by-N 
+  * grid spread over nThreads worker threads. Every experiment draws from 
+  * its own SplittableRandom stream split off a master generator in trial 
+  * order, so the results are bit-identical for any number of threads.
+  * @param N size of the grid 
+  * @param T number of experiments 
+  * @param seed seed of the master generator
+  * @param nThreads number of worker threads
+  */
+  public PercolationStats(int N, int T, long seed, int nThreads) {
+    if (N < 1 || T < 1 || nThreads < 1)
+      throw new IllegalArgumentException("illegal input parameters");
+
+    runSeeded(N, T, 0, seed, nThreads, null);
+  }
+
+  /* Same as above, additionally counting in histogram[n] the trials that 
+   * first percolated with n open sites; histogram must have N*N + 1 
+   * entries. Used by PercolationCurve. */
+  PercolationStats(int N, int T, long seed, int nThreads, int[] histogram) {
+    if (N < 1 || T < 1 || nThreads < 1 || histogram.length != N*N + 1)
+      throw new IllegalArgumentException("illegal input parameters");
+
+    runSeeded(N, T, 0, seed, nThreads, histogram);
+  }
+
+  /* Statistics of already computed trials: counts[i] is the number of 
+   * sites open when trial i percolated. Used by PercolationSweep. */
+  PercolationStats(int N, int[] counts) {
+    if (N < 1 || counts.length < 1)
+      throw new IllegalArgumentException("illegal input parameters");
+
+    for (int count : counts)
+      add((double) count / (N*N));
+  }
+
+  /**
+  * Constructor. Performs permutation experiments on an N-by-N grid until the 
+  * 95% confidence interval is at most 2*halfWidth wide, or maxT experiments 
+  * have been run. At least 30 experiments are run before stopping early. 
+  * The stopping point depends on the seed only, not on nThreads.
+  * @param N size of the grid 
+  * @param halfWidth target half-width of the confidence interval
+  * @param maxT maximum number of experiments 
+  * @param seed seed of the master generator
+  * @param nThreads number of worker threads
+  */
+  public PercolationStats(int N, double halfWidth, int maxT, long seed, 
+                          int nThreads) {
+    if (N < 1 || !(halfWidth > 0) || maxT < 1 || nThreads < 1)
+      throw new IllegalArgumentException("illegal input parameters");
+
+    runSeeded(N, maxT, halfWidth, seed, nThreads, null);
+  }
+
+  /* Runs up to T permutation trials with per-trial streams split off seed. 
+   * Trials run in batches of a few per thread; results of a batch are 
+   * folded in trial order, so the accumulated values and the early stop 
+   * (when halfWidth > 0) do not depend on the thread count. If histogram 
+   * is not null, the open count of every trial is tallied in it. */
+  private void runSeeded(int N, int T, double halfWidth, long seed, 
+                         int nThreads, int[] histogram) {
+    SplittableRandom master = new SplittableRandom(seed);
+    int batch = Math.min(T, 8 * nThreads);
+    SplittableRandom[] streams = new SplittableRandom[batch];
+    int[] results = new int[batch];
+
+    /* Without a pool the trials run on this thread alone; invokeAll() 
+     * outside a pool would fork them to the common pool instead */
+    ForkJoinPool pool = nThreads > 1 ? new ForkJoinPool(nThreads) : null;
+    int[] sites = pool == null ? new int[N*N] : null;
+    ThreadLocal<int[]> buffers = pool == null ? null : newBuffers(N);
+    try {
+      for (int done = 0; done < T; ) {
+        int n = Math.min(batch, T - done);
+        for (int i = 0; i < n; ++i)
+          streams[i] = master.split();
+
+        if (pool == null) 
+          runTrials(N, streams, results, 0, n, sites);
+        else 
+          pool.invoke(new TrialTask(N, streams, results, 0, n, buffers));
+
+        for (int i = 0; i < n; ++i) {
+          if (histogram != null)
+            ++histogram[results[i]];
+          add((double) results[i] / (N*N));
+          ++done;
+          if (halfWidth > 0 && nTrials >= MIN_TRIALS 
+              && confidenceHi() - confidenceLo() <= 2 * halfWidth)
+            return;
         }
       }
+    }
+    finally {
+      if (pool != null)
+        pool.shutdown();
+    }
+  }
 
-      //StdOut.printf("The system percolated at: %d\n", counter);
-      threshold[i] = (double) counter / (N*N);
+  /* Fork-join task running trials [lo, hi), split in halves down to 
+   * single trials. Stores the open count at which each trial percolated. 
+   * Each worker thread reuses one sites array, taken from buffers. */
+  private static class TrialTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final int N;
+    private final SplittableRandom[] streams;
+    private final int[] results;
+    private final int lo;
+    private final int hi;
+    private final ThreadLocal<int[]> buffers;
+
+    TrialTask(int N, SplittableRandom[] streams, int[] results, 
+              int lo, int hi, ThreadLocal<int[]> buffers) {
+      this.N = N;
+      this.streams = streams;
+      this.results = results;
+      this.lo = lo;
+      this.hi = hi;
+      this.buffers = buffers;
     }
+
+    @Override
+    protected void compute() {
+      if (hi - lo > 1) {
+        int mid = (lo + hi) >>> 1;
+        invokeAll(new TrialTask(N, streams, results, lo, mid, buffers),
+                  new TrialTask(N, streams, results, mid, hi, buffers));
+        return;
+      }
+
+      runTrials(N, streams, results, lo, hi, buffers.get());
+    }
+  }
+
+  /* One N*N sites array per thread that asks for it */
+  private static ThreadLocal<int[]> newBuffers(final int N) {
+    return new ThreadLocal<int[]>() {
+      @Override
+      protected int[] initialValue() {
+        return new int[N*N];
+      }
+    };
+  }
+
+  /* Runs trials [lo, hi) one after another in sites */
+  private static void runTrials(int N, SplittableRandom[] streams, 
+                                int[] results, int lo, int hi, int[] sites) {
+    for (int i = lo; i < hi; ++i) {
+      /* Start from the identity so the outcome of a trial depends on its 
+       * own stream only, not on which trials ran before it */
+      for (int k = 0; k < sites.length; ++k)
+        sites[k] = k;
+      results[i] = permutationTrial(N, sites, streams[i]);
+      streams[i] = null;
+    }
+  }
+
+  /* Folds one threshold into the running mean and deviation (Welford) */
+  private void add(double x) {
+    ++nTrials;
+    double delta = x - mean;
+    mean += delta / nTrials;
+    m2 += delta * (x - mean);
+  }
+
+  /**
+   * Number of experiments performed 
+   */
+  public int trials() {
+    return nTrials;
   }
 
   /**
    * Sample mean percolation threshold 
    */
   public double mean() {
-    return StdStats.mean(threshold);
+    return mean;
   }
 
   /**
    * Sample standard deviation of percolation threshold 
    */
   public double stddev() {
-    return StdStats.stddev(threshold);
+    return Math.sqrt(m2 / (nTrials - 1));
   }
 
   /**
@@ -91,15 +275,78 @@ public class PercolationStats {
     return mean() + (1.96*stddev()/Math.sqrt(nTrials));
   }
 
+  /* Opens random sites until the system percolates, returns the number 
+   * of sites opened */
+  private static int randomTrial(int N) {
+    int counter = 0;
+    Percolation p = new Percolation(N);
+    
+    /* Start simulation by openning sites before the instance percolates */
+    while (!p.percolates()) {
+      int row = StdRandom.uniform(1, N + 1);
+      int column = StdRandom.uniform(1, N + 1);
+    
+      if (!p.isOpen(row, column)) {
+        //StdOut.printf("Openning row: %d column: %d\n", row, column);
+        p.open(row, column);
+        ++counter;
+      }
+    }
+    return counter;
+  }
+
+  /* Opens the sites in the order of a random permutation until the system 
+   * percolates, returns the number of sites opened. The permutation is 
+   * produced lazily by a Knuth shuffle, one swap per opened site, so no 
+   * draw is ever rejected and sites past the threshold are never touched. 
+   * sites must hold a permutation of [0, N*N) and is left permuted. 
+   * Trial i of the seeded modes uses the i-th split() of the master 
+   * generator and starts from the identity; PercolationSweep relies on 
+   * that to recompute single trials. */
+  static int permutationTrial(int N, int[] sites,
+                              SplittableRandom rng) {
+    Percolation p = new Percolation(N);
+    int counter = 0;
+
+    while (!p.percolates()) {
+      int r = rng.nextInt(counter, sites.length);
+      int site = sites[r];
+      sites[r] = sites[counter];
+      sites[counter] = site;
+
+      p.open(site / N + 1, site % N + 1);
+      ++counter;
+    }
+    return counter;
+  }
+
   public static void main(String[] args) {
     Percolation p;
     int N = Integer.parseInt(args[0]); // Size of the matrix 
     int T = Integer.parseInt(args[1]); // Number of trials 
     
     // Stopwatch t = new Stopwatch();
-    PercolationStats ps = new PercolationStats(N, T);  
+    PercolationStats ps;
+    /* Optional "-p" selects permutation (Newman-Ziff) trials, 
+     * "-t threads [seed]" runs them on several threads, 
+     * "-w halfWidth threads [seed]" stops once the confidence interval is 
+     * narrow enough, running at most T trials */
+    if (args.length > 4 && args[2].equals("-w")) {
+      double halfWidth = Double.parseDouble(args[3]);
+      int nThreads = Integer.parseInt(args[4]);
+      long seed = args.length > 5 ? Long.parseLong(args[5]) : System.nanoTime();
+      ps = new PercolationStats(N, halfWidth, T, seed, nThreads);
+    }
+    else if (args.length > 3 && args[2].equals("-t")) {
+      int nThreads = Integer.parseInt(args[3]);
+      long seed = args.length > 4 ? Long.parseLong(args[4]) : System.nanoTime();
+      ps = new PercolationStats(N, T, seed, nThreads);
+    }
+    else
+      ps = new PercolationStats(N, T, args.length > 2 && args[2].equals("-p"));
     // double elapsedTime = t.elapsedTime();
 
+    StdOut.printf("trials                  = %d\n", ps.trials());
     StdOut.printf("mean                    = %f\n", ps.mean());
     StdOut.printf("stddev                  = %f\n", ps.stddev());
     StdOut.printf("95%% confidence interval = %f, %f\n", 
@@ -0,0 +1,300 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+For more information, please refer to <http://unlicense.org/>
+*/
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs many seeded PercolationStats jobs, for example for finite-size 
+ * scaling, and keeps every finished trial in an on-disk cache.
+ *
+ * Trial i of a job (N, T, seed) is fully determined by the job and i (see 
+ * PercolationStats), so each trial is stored on its own: a rerun, or a 
+ * run resuming an interrupted sweep, only computes the trials missing 
+ * from the cache. Cache files are keyed by N, T, seed and ENGINE_VERSION, 
+ * which must be bumped whenever a change to the engine alters results. 
+ *
+ * Missing trials are cut into chunks and handed to a work-stealing pool, 
+ * most expensive jobs first, so that long jobs do not end up running 
+ * alone at the end of the sweep.
+ */
+public class PercolationSweep {
+  public static final int ENGINE_VERSION = 1;
+  private static final int CHUNK = 8; // Trials per task and per cache write 
+
+  /**
+   * A sweep job: T trials on an N-by-N grid from a master seed.
+   */
+  public static class Job {
+    private final int N;
+    private final int T;
+    private final long seed;
+
+    public Job(int N, int T, long seed) {
+      if (N < 1 || T < 1)
+        throw new IllegalArgumentException("illegal input parameters");
+      this.N = N;
+      this.T = T;
+      this.seed = seed;
+    }
+
+    public int N() {
+      return N;
+    }
+
+    public int T() {
+      return T;
+    }
+
+    public long seed() {
+      return seed;
+    }
+
+    /* Relative cost, trials take time roughly proportional to N^2 */
+    private double cost() {
+      return (double) T * N * N;
+    }
+  }
+
+  private final File cacheDir;
+  private final int nThreads;
+
+  /**
+   * Constructor. 
+   * @param cacheDir directory of the trial cache, created if missing
+   * @param nThreads number of worker threads
+   */
+  public PercolationSweep(File cacheDir, int nThreads) {
+    if (nThreads < 1)
+      throw new IllegalArgumentException("illegal input parameters");
+    this.cacheDir = cacheDir;
+    this.nThreads = nThreads;
+  }
+
+  /**
+   * Runs the jobs, computing only trials not found in the cache. 
+   * @return statistics of each job, in the order of jobs
+   * @throws java.io.IOException if the cache can not be read or written
+   */
+  public PercolationStats[] run(Job[] jobs) throws IOException {
+    if (!cacheDir.isDirectory() && !cacheDir.mkdirs())
+      throw new IOException("can not create " + cacheDir);
+
+    /* Load what is cached; -1 marks a missing trial */
+    int[][] counts = new int[jobs.length][];
+    DataOutputStream[] outs = new DataOutputStream[jobs.length];
+    List<Integer> order = new ArrayList<Integer>();
+    try {
+      for (int k = 0; k < jobs.length; ++k) {
+        counts[k] = load(jobs[k]);
+        for (int c : counts[k]) {
+          if (c < 0) {
+            outs[k] = new DataOutputStream(
+                new FileOutputStream(cacheFile(jobs[k]), true));
+            order.add(k);
+            break;
+          }
+        }
+      }
+
+      final Job[] js = jobs;
+      order.sort(new Comparator<Integer>() {
+        public int compare(Integer a, Integer b) {
+          return Double.compare(js[b].cost(), js[a].cost());
+        }
+      });
+
+      /* Submit chunks of missing trials, longest jobs first */
+      ForkJoinPool pool = new ForkJoinPool(nThreads);
+      try {
+        List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+        for (int k : order) {
+          /* Trial i uses the i-th split of the master generator; split 
+           * here, once and in trial order, skipping over cached trials */
+          SplittableRandom master = new SplittableRandom(jobs[k].seed);
+          int next = 0;
+          int[] missing = missing(counts[k]);
+          for (int lo = 0; lo < missing.length; lo += CHUNK) {
+            int[] chunk = Arrays.copyOfRange(missing, lo, 
+                                      Math.min(missing.length, lo + CHUNK));
+            SplittableRandom[] streams = new SplittableRandom[chunk.length];
+            for (int c = 0; c < chunk.length; ++c) {
+              while (next <= chunk[c]) {
+                streams[c] = master.split();
+                ++next;
+              }
+            }
+            tasks.add(pool.submit(chunkTask(jobs[k], chunk, streams, 
+                                            counts[k], outs[k])));
+          }
+        }
+        for (ForkJoinTask<?> task : tasks)
+          task.join();
+      }
+      catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+      finally {
+        pool.shutdown();
+      }
+    }
+    finally {
+      for (DataOutputStream out : outs)
+        if (out != null)
+          out.close();
+    }
+
+    PercolationStats[] stats = new PercolationStats[jobs.length];
+    for (int k = 0; k < jobs.length; ++k)
+      stats[k] = new PercolationStats(jobs[k].N, counts[k]);
+    return stats;
+  }
+
+  /* Task computing the given trials of a job, trials[k] from streams[k], 
+   * and appending them to its cache file */
+  private static Runnable chunkTask(final Job job, final int[] trials, 
+                                    final SplittableRandom[] streams, 
+                                    final int[] counts, 
+                                    final DataOutputStream out) {
+    return new Runnable() {
+      public void run() {
+        int[] sites = new int[job.N * job.N];
+        int[] results = new int[trials.length];
+        for (int k = 0; k < trials.length; ++k) {
+          for (int s = 0; s < sites.length; ++s)
+            sites[s] = s;
+          results[k] = PercolationStats.permutationTrial(job.N, sites, 
+                                                         streams[k]);
+        }
+
+        synchronized (out) {
+          try {
+            for (int k = 0; k < trials.length; ++k) {
+              out.writeInt(trials[k]);
+              out.writeInt(results[k]);
+            }
+            out.flush();
+          }
+          catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+          for (int k = 0; k < trials.length; ++k)
+            counts[trials[k]] = results[k];
+        }
+      }
+    };
+  }
+
+  /* Reads the cached trials of a job. A record cut short by an 
+   * interrupted run is ignored. */
+  private int[] load(Job job) throws IOException {
+    int[] counts = new int[job.T];
+    Arrays.fill(counts, -1);
+
+    File f = cacheFile(job);
+    if (!f.exists())
+      return counts;
+
+    long records = f.length() / 8;
+    DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(f)));
+    try {
+      for (long r = 0; r < records; ++r) {
+        int trial = in.readInt();
+        int count = in.readInt();
+        if (trial < 0 || trial >= job.T || count < 1 
+            || count > job.N * job.N)
+          throw new IOException(f + " is corrupt");
+        counts[trial] = count;
+      }
+    }
+    finally {
+      in.close();
+    }
+
+    /* Drop a partial trailing record so that appends stay aligned */
+    if (f.length() % 8 != 0) {
+      RandomAccessFile raf = new RandomAccessFile(f, "rw");
+      try {
+        raf.setLength(records * 8);
+      }
+      finally {
+        raf.close();
+      }
+    }
+    return counts;
+  }
+
+  private File cacheFile(Job job) {
+    return new File(cacheDir, job.N + "-" + job.T + "-" + job.seed 
+                              + "-v" + ENGINE_VERSION + ".trials");
+  }
+
+  private static int[] missing(int[] counts) {
+    int n = 0;
+    int[] missing = new int[counts.length];
+    for (int i = 0; i < counts.length; ++i)
+      if (counts[i] < 0)
+        missing[n++] = i;
+    return Arrays.copyOf(missing, n);
+  }
+
+  /**
+   * Usage: PercolationSweep cacheDir threads N:T:seed ... 
+   */
+  public static void main(String[] args) throws IOException {
+    File cacheDir = new File(args[0]);
+    int nThreads = Integer.parseInt(args[1]);
+    Job[] jobs = new Job[args.length - 2];
+    for (int k = 0; k < jobs.length; ++k) {
+      String[] f = args[k + 2].split(":");
+      jobs[k] = new Job(Integer.parseInt(f[0]), Integer.parseInt(f[1]), 
+                        Long.parseLong(f[2]));
+    }
+
+    PercolationStats[] stats = new PercolationSweep(cacheDir, nThreads)
+                               .run(jobs);
+    for (int k = 0; k < jobs.length; ++k)
+      StdOut.printf("N = %d T = %d seed = %d: mean = %f stddev = %f\n", 
+                    jobs[k].N, jobs[k].T, jobs[k].seed, 
+                    stats[k].mean(), stats[k].stddev());
+  }
+}
@@ -0,0 +1,197 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+For more information, please refer to <http://unlicense.org/>
+*/
+
+/**
+ * Streaming percolation check for a fully specified N-by-N grid. Rows are 
+ * fed top to bottom, one at a time, and only a two-row window of cluster 
+ * labels is kept (Hoshen-Kopelman), so memory is O(N) instead of O(N^2).
+ *
+ * After the last row has been added, percolates() tells whether the grid 
+ * percolates and isFull() whether a bottom row site is full.
+ */
+public class RowPercolation {
+  private int N;          // Size of a grid 
+  private int rows;       // Number of rows added so far 
+  private int[] label;    // Label of each site in the last row, -1 if blocked 
+  private int[] parent;   // Label union-find; [0, N) previous row, [N, 2N) current 
+  private boolean[] top;  // Whether a label root is connected to the top row 
+  private int[] remap;    // Scratch for relabelling, -1 when unused 
+  private boolean[] nextTop; // Scratch for relabelling 
+
+  /**
+   * Constructor. Prepares to read an N-by-N grid row by row.
+   * @param N size of a grid
+   */
+  public RowPercolation(int n) {
+    if (n < 1)
+      throw new IllegalArgumentException("illegal input parameters");
+
+    N = n;
+    rows = 0;
+    label = new int[N];
+    java.util.Arrays.fill(label, -1);
+    parent = new int[2 * N];
+    top = new boolean[2 * N];
+    remap = new int[2 * N];
+    java.util.Arrays.fill(remap, -1);
+    nextTop = new boolean[N];
+  }
+
+  /**
+   * Adds the next row of the grid. 
+   * @param open open[j - 1] tells whether site (row, column j) is open
+   * @throws java.lang.IllegalArgumentException if open does not have N 
+   * entries 
+   * @throws java.lang.IllegalStateException if all N rows were added
+   */
+  public void addRow(boolean[] open) {
+    if (open.length != N)
+      throw new IllegalArgumentException("row must have N sites");
+    if (rows == N)
+      throw new IllegalStateException("all rows were already added");
+
+    /* Give every open site of the new row its own label in [N, 2N) and 
+     * merge it with the open sites to the left and above */
+    for (int j = 0; j < N; ++j) {
+      if (!open[j]) 
+        continue;
+
+      parent[N + j] = N + j;
+      top[N + j] = (rows == 0);
+      if (j > 0 && open[j - 1])
+        union(N + j, N + j - 1);
+      if (label[j] >= 0)
+        union(N + j, label[j]);
+    }
+
+    /* Relabel the clusters of the new row into [0, N). Clusters of the 
+     * previous row that did not reach this row are dropped here: they 
+     * can no longer reach the bottom. */
+    int nLabels = 0;
+    for (int j = 0; j < N; ++j) {
+      if (!open[j]) {
+        label[j] = -1;
+        continue;
+      }
+
+      int root = find(N + j);
+      if (remap[root] < 0) {
+        remap[root] = nLabels;
+        nextTop[nLabels] = top[root];
+        ++nLabels;
+      }
+      label[j] = remap[root];
+    }
+
+    for (int j = 0; j < N; ++j)
+      if (open[j])
+        remap[find(N + j)] = -1;
+
+    for (int k = 0; k < nLabels; ++k) {
+      parent[k] = k;
+      top[k] = nextTop[k];
+    }
+
+    ++rows;
+  }
+
+  /**
+   * Checks whether the system percolates. 
+   * @throws java.lang.IllegalStateException if not all rows were added
+   */
+  public boolean percolates() {
+    checkComplete();
+    for (int j = 0; j < N; ++j)
+      if (label[j] >= 0 && top[label[j]])
+        return true;
+    return false;
+  }
+
+  /**
+   * Checks whether site (row N, column j) is full. 
+   * @throws java.lang.IndexOutOfBoundsException if j is out of [1, N] 
+   * bounds
+   * @throws java.lang.IllegalStateException if not all rows were added
+   */
+  public boolean isFull(int j) {
+    checkComplete();
+    if (!(j >= 1 && j <= N))
+      throw new IndexOutOfBoundsException("column is out of bounds");
+
+    return label[j - 1] >= 0 && top[label[j - 1]];
+  }
+
+  private void checkComplete() {
+    if (rows != N)
+      throw new IllegalStateException("only " + rows + " of " + N 
+                                      + " rows were added");
+  }
+
+  private int find(int p) {
+    while (parent[p] != p) {
+      parent[p] = parent[parent[p]];
+      p = parent[p];
+    }
+    return p;
+  }
+
+  private void union(int p, int q) {
+    int i = find(p);
+    int j = find(q);
+    if (i == j)
+      return;
+
+    parent[j] = i;
+    top[i] |= top[j];
+  }
+
+  /**
+   * Reads a grid file holding N followed by N rows of N 0/1 values 
+   * (1 = open), and prints whether it percolates and which bottom row 
+   * sites are full.
+   */
+  public static void main(String[] args) {
+    In in = new In(args[0]);      // input file
+    int N = in.readInt();         // N-by-N percolation system
+
+    RowPercolation rp = new RowPercolation(N);
+    boolean[] row = new boolean[N];
+    for (int i = 0; i < N; ++i) {
+      for (int j = 0; j < N; ++j)
+        row[j] = in.readInt() != 0;
+      rp.addRow(row);
+    }
+
+    StdOut.printf("%s\n", rp.percolates() ? "percolates" 
+                                          : "does not percolate");
+    StdOut.printf("full bottom sites:");
+    for (int j = 1; j <= N; ++j)
+      if (rp.isFull(j))
+        StdOut.printf(" %d", j);
+    StdOut.printf("\n");
+  }
+}
@@ -0,0 +1,181 @@
+/****************************************************************************
+ *  Compilation:  javac PercolationRenderer.java
+ *  Dependencies: Percolation.java
+ *
+ *  Off-screen renderer for a percolation system. Draws the same picture
+ *  as PercolationVisualizer (same 512x512 layout and colours) into a
+ *  BufferedImage, without a window and without redrawing the whole grid
+ *  after each opened site.
+ *
+ *  After perc.open(i, j), call opened(i, j). Only sites whose state can
+ *  have changed are repainted: the opened site itself and, if it is full,
+ *  the open sites of its cluster that were not full before. Every site is
+ *  painted at most twice over a whole replay (when it opens and when it
+ *  fills), so replaying a file costs O(N^2) pixels in total.
+ *
+ ****************************************************************************/
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+
+public class PercolationRenderer {
+
+    // canvas size and border fraction used by StdDraw
+    private static final int SIZE = 512;
+    private static final double BORDER = 0.05;
+
+    private static final Color LIGHT_BLUE = new Color(103, 198, 243);
+
+    // site states
+    private static final byte BLOCKED = 0;
+    private static final byte OPEN = 1;
+    private static final byte FULL = 2;
+
+    private final Percolation perc;
+    private final int N;
+    private final BufferedImage image;
+    private final Graphics2D g;
+    private final byte[] state;   // state of each site as currently drawn
+    private final int[] stack;    // flood fill scratch
+
+    // renders the current state of perc
+    public PercolationRenderer(Percolation perc, int N) {
+        this.perc = perc;
+        this.N = N;
+        image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+        g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                           RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(new Font("SansSerif", Font.PLAIN, 12));
+        state = new byte[N*N];
+        stack = new int[N*N];
+
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, SIZE, SIZE);
+        g.setColor(Color.BLACK);
+        fill(0, 0, N, N);
+
+        long[] full = new long[(N*N + 63) / 64];
+        perc.fullSites(full);
+        for (int k = 0; k < N*N; k++) {
+            if ((full[k >>> 6] & (1L << k)) != 0)      paint(k, FULL);
+            else if (perc.isOpen(k / N + 1, k % N + 1)) paint(k, OPEN);
+        }
+        status();
+    }
+
+    // updates the picture after site (i, j) has been opened
+    public void opened(int i, int j) {
+        int site = (i - 1) * N + (j - 1);
+        if (state[site] != BLOCKED) return;
+
+        if (!perc.isFull(i, j)) {
+            paint(site, OPEN);
+        }
+        else {
+            // the cluster of site may just have become full: flood it
+            // across open sites that are not drawn as full yet
+            int n = 0;
+            paint(site, FULL);
+            stack[n++] = site;
+            while (n > 0) {
+                int k = stack[--n];
+                int row = k / N, col = k % N;
+                if (row > 0)     n = visit(k - N, n);
+                if (row < N - 1) n = visit(k + N, n);
+                if (col > 0)     n = visit(k - 1, n);
+                if (col < N - 1) n = visit(k + 1, n);
+            }
+        }
+        status();
+    }
+
+    // the rendered picture
+    public BufferedImage image() {
+        return image;
+    }
+
+    // writes the rendered picture as a PNG file
+    public void write(File png) throws IOException {
+        ImageIO.write(image, "png", png);
+    }
+
+    // number of sites whose colour differs from the picture in reference,
+    // sampled at the centre of every site
+    public int compare(BufferedImage reference) {
+        int mismatches = 0;
+        for (int k = 0; k < N*N; k++) {
+            int x = px(k % N + 0.5);
+            int y = py(N - k / N - 0.5);
+            if (classify(reference.getRGB(x, y)) != state[k]) mismatches++;
+        }
+        return mismatches;
+    }
+
+    private int visit(int k, int n) {
+        if (state[k] == OPEN || (state[k] == BLOCKED
+                                 && perc.isOpen(k / N + 1, k % N + 1))) {
+            paint(k, FULL);
+            stack[n++] = k;
+        }
+        return n;
+    }
+
+    private void paint(int k, byte s) {
+        state[k] = s;
+        g.setColor(s == FULL ? LIGHT_BLUE : s == OPEN ? Color.WHITE
+                                                      : Color.BLACK);
+        double x = k % N + 0.5;
+        double y = N - k / N - 0.5;
+        fill(x - 0.45, y - 0.45, x + 0.45, y + 0.45);
+    }
+
+    // redraws the status line below the grid
+    private void status() {
+        int top = py(0) + 1;
+        g.setColor(Color.WHITE);
+        g.fillRect(0, top, SIZE, SIZE - top);
+        g.setColor(Color.BLACK);
+        text(.25*N, -N*.025, perc.numberOfOpenSites() + " open sites");
+        text(.75*N, -N*.025, perc.percolates() ? "percolates"
+                                               : "does not percolate");
+    }
+
+    private void text(double x, double y, String s) {
+        FontMetrics fm = g.getFontMetrics();
+        g.drawString(s, px(x) - fm.stringWidth(s) / 2,
+                     py(y) + fm.getDescent());
+    }
+
+    // fills the rectangle between two corners given in grid coordinates
+    private void fill(double x0, double y0, double x1, double y1) {
+        int left = px(x0), right = px(x1);
+        int top = py(y1), bottom = py(y0);
+        g.fillRect(left, top, Math.max(1, right - left),
+                   Math.max(1, bottom - top));
+    }
+
+    // grid coordinates to pixels, as StdDraw scales [0, N] with a border
+    private int px(double x) {
+        return (int) Math.round((x + BORDER*N) / ((1 + 2*BORDER)*N) * SIZE);
+    }
+
+    private int py(double y) {
+        return SIZE - (int) Math.round((y + BORDER*N) / ((1 + 2*BORDER)*N)
+                                       * SIZE);
+    }
+
+    private static byte classify(int rgb) {
+        int r = (rgb >> 16) & 0xff, b = rgb & 0xff;
+        if (r > 200 && b > 200) return OPEN;
+        if (b > 200)            return FULL;
+        return BLOCKED;
+    }
+}
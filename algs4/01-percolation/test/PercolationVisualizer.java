@@ -1,7 +1,11 @@
 /****************************************************************************
  *  Compilation:  javac PercolationVisualizer.java
  *  Execution:    java PercolationVisualizer input.txt
+ *                java PercolationVisualizer input.txt -png final.png
+ *                java PercolationVisualizer input.txt -frames dir
+ *                java PercolationVisualizer input.txt -compare ref.png
  *  Dependencies: Percolation.java StdDraw.java In.java
+ *                PercolationRenderer.java
  *
  *  This program takes the name of a file as a command-line argument.
  *  From that file, it
@@ -14,9 +18,18 @@
  *  open sites (that aren't full) in white, and blocked sites in black,
  *  with with site (1, 1) in the upper left-hand corner.
  *
+ *  With -png, -frames or -compare nothing is shown on screen. The system
+ *  is rendered off-screen by PercolationRenderer, which only repaints the
+ *  sites that changed, and the final picture is written as a PNG file,
+ *  every step is written as dir/frame-NNNNNN.png, or the final picture
+ *  is compared site by site with a reference picture.
+ *
  ****************************************************************************/
 
 import java.awt.Font;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
 
 public class PercolationVisualizer {
 
@@ -31,17 +44,19 @@ public class PercolationVisualizer {
         StdDraw.setYscale(0, N);
         StdDraw.filledSquare(N/2.0, N/2.0, N/2.0);
 
+        // fetch all full sites at once
+        long[] full = new long[(N*N + 63) / 64];
+        perc.fullSites(full);
+
         // draw N-by-N grid
-        int opened = 0;
         for (int row = 1; row <= N; row++) {
             for (int col = 1; col <= N; col++) {
-                if (perc.isFull(row, col)) {
+                int k = (row - 1) * N + (col - 1);
+                if ((full[k >>> 6] & (1L << k)) != 0) {
                     StdDraw.setPenColor(StdDraw.BOOK_LIGHT_BLUE);
-                    opened++;
                 }
                 else if (perc.isOpen(row, col)) {
                     StdDraw.setPenColor(StdDraw.WHITE);
-                    opened++;
                 }
                 else
                     StdDraw.setPenColor(StdDraw.BLACK);
@@ -52,16 +67,49 @@ public class PercolationVisualizer {
         // write status text
         StdDraw.setFont(new Font("SansSerif", Font.PLAIN, 12));
         StdDraw.setPenColor(StdDraw.BLACK);
-        StdDraw.text(.25*N, -N*.025, opened + " open sites");
+        StdDraw.text(.25*N, -N*.025, perc.numberOfOpenSites() + " open sites");
         if (perc.percolates()) StdDraw.text(.75*N, -N*.025, "percolates");
         else                   StdDraw.text(.75*N, -N*.025, "does not percolate");
 
     }
 
-    public static void main(String[] args) {
+    // replay the file off-screen; see the header for the modes
+    private static void headless(In in, int N, String mode, String path)
+        throws IOException {
+        Percolation perc = new Percolation(N);
+        PercolationRenderer renderer = new PercolationRenderer(perc, N);
+        boolean frames = mode.equals("-frames");
+        int step = 0;
+        if (frames) renderer.write(frame(path, step++));
+        while (!in.isEmpty()) {
+            int i = in.readInt();
+            int j = in.readInt();
+            perc.open(i, j);
+            renderer.opened(i, j);
+            if (frames) renderer.write(frame(path, step++));
+        }
+
+        if (mode.equals("-png"))
+            renderer.write(new File(path));
+        else if (mode.equals("-compare"))
+            StdOut.println(renderer.compare(ImageIO.read(new File(path)))
+                           + " sites differ from " + path);
+    }
+
+    private static File frame(String dir, int step) {
+        return new File(dir, String.format("frame-%06d.png", step));
+    }
+
+    public static void main(String[] args) throws IOException {
         In in = new In(args[0]);      // input file
         int N = in.readInt();         // N-by-N percolation system
 
+        if (args.length > 2) {
+            System.setProperty("java.awt.headless", "true");
+            headless(in, N, args[1], args[2]);
+            return;
+        }
+
         // turn on animation mode
         StdDraw.show(0);
 
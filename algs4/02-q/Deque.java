@@ -26,37 +26,29 @@ For more information, please refer to <http://unlicense.org/>
 */
 
 import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 
 public class Deque<Item> implements Iterable<Item> {
-  private int n; // Number of elements in the deque
-  private DequeNode<Item> start;
-  private DequeNode<Item> end;
-
-  private class DequeNode<Item> {
-    private DequeNode<Item> next;
-    private DequeNode<Item> prev;
-    private Item item;
-
-    /* default constructor */ 
-    public DequeNode() {
-      next = null;
-      prev = null;
-      item = null;
-    } 
-
-    /* initializing constructor */
-    public DequeNode(Item i) {
-      item = i;
-      next = null;
-      prev = null;
-    }
-  }
+  private static final int MIN_CAPACITY = 8; // Always a power of two 
+
+  private Item[] items; // circular buffer, length is a power of two 
+  private int head;     // index of the front item 
+  private int n;        // Number of elements in the deque 
+  private boolean shrink; // Whether to release memory as the deque empties 
 
   /* construct an empty deque */
   public Deque() {
-    start = null;
-    end = null;
+    this(true);
+  }
+
+  /* construct an empty deque; with shrink set to false the buffer never 
+   * shrinks, which avoids copying for deques that grow and drain often */
+  public Deque(boolean shrink) {
+    items = newArray(MIN_CAPACITY);
+    head = 0;
     n = 0;
+    this.shrink = shrink;
   }
 
   /* is the deque empty */
@@ -74,21 +66,12 @@ public class Deque<Item> implements Iterable<Item> {
     if (item == null) 
      throw new NullPointerException("item can not be null"); 
 
-    DequeNode<Item> tmpItem = new DequeNode<Item>(item);  
-
-    /* if this is the first item  */
-    if (n == 0) {
-      start = tmpItem;
-      end = tmpItem;
-    }
-    else {
-      start.prev = tmpItem;
-      tmpItem.next = start;
-      start = tmpItem;
-    }
+    if (n == items.length)
+      resize(2 * items.length);
 
+    head = (head - 1) & (items.length - 1);
+    items[head] = item;
     ++n;
-    return;
   }
 
   /* insert the item at the end */
@@ -96,20 +79,11 @@ public class Deque<Item> implements Iterable<Item> {
     if (item == null) 
       throw new NullPointerException("item can not be null"); 
   
-    DequeNode<Item> tmpItem = new DequeNode<Item>(item); 
-  
-    if (n == 0) {
-      start = tmpItem;
-      end = tmpItem;
-    }
-    else {
-      end.next = tmpItem;
-      tmpItem.prev = end;
-      end = tmpItem;
-    }
+    if (n == items.length)
+      resize(2 * items.length);
 
+    items[(head + n) & (items.length - 1)] = item;
     ++n;
-    return;
   }
 
   
@@ -118,15 +92,11 @@ public class Deque<Item> implements Iterable<Item> {
     if (n == 0)
       throw new java.util.NoSuchElementException("deque is empty");
     
-    Item tmp = start.item;
-    start = start.next;
-    
-    if (n == 1) 
-      end = null;
-    else 
-      start.prev = null;
-
+    Item tmp = items[head];
+    items[head] = null;
+    head = (head + 1) & (items.length - 1);
     --n;
+    shrinkIfSparse();
 
     return tmp;
   }
@@ -136,38 +106,127 @@ public class Deque<Item> implements Iterable<Item> {
     if (n == 0)
       throw new java.util.NoSuchElementException("deque is empty");
   
-    Item tmp = end.item;
-    end = end.prev;
-
-    if (n == 1)
-      start = null;
-    else
-      end.next = null;
-
+    int last = (head + n - 1) & (items.length - 1);
+    Item tmp = items[last];
+    items[last] = null;
     --n;
+    shrinkIfSparse();
     
     return tmp;
   }
-  
+
+  /* insert the items at the front, keeping their order: items[0] becomes 
+   * the first item */
+  public void addAllFirst(Item[] items) {
+    checkNotNull(items);
+    ensureCapacity(n + items.length);
+
+    int mask = this.items.length - 1;
+    int newHead = (head - items.length) & mask;
+    copyIn(items, newHead);
+    head = newHead;
+    n += items.length;
+  }
+
+  /* insert the items at the end, keeping their order */
+  public void addAllLast(Item[] items) {
+    checkNotNull(items);
+    ensureCapacity(n + items.length);
+
+    copyIn(items, (head + n) & (this.items.length - 1));
+    n += items.length;
+  }
+
+  /* delete up to dst.length items from the front and store them in dst, 
+   * front first; return the number of items moved */
+  public int drainTo(Item[] dst) {
+    int count = Math.min(n, dst.length);
+    int firstPart = Math.min(count, items.length - head);
+    System.arraycopy(items, head, dst, 0, firstPart);
+    System.arraycopy(items, 0, dst, firstPart, count - firstPart);
+    clear(head, count);
+
+    head = (head + count) & (items.length - 1);
+    n -= count;
+    shrinkIfSparse();
+
+    return count;
+  }
+
+  private static void checkNotNull(Object[] items) {
+    for (Object item : items)
+      if (item == null)
+        throw new NullPointerException("item can not be null");
+  }
+
+  /* grow the buffer, once, to hold at least capacity items */
+  private void ensureCapacity(int capacity) {
+    if (capacity <= items.length)
+      return;
+    if (capacity > (1 << 30))
+      throw new IllegalStateException("deque is too large");
+    resize(Integer.highestOneBit(capacity - 1) << 1);
+  }
+
+  /* copy src into the buffer starting at slot start, wrapping around */
+  private void copyIn(Item[] src, int start) {
+    int firstPart = Math.min(src.length, items.length - start);
+    System.arraycopy(src, 0, items, start, firstPart);
+    System.arraycopy(src, firstPart, items, 0, src.length - firstPart);
+  }
+
+  /* null out count slots starting at slot start, wrapping around */
+  private void clear(int start, int count) {
+    int firstPart = Math.min(count, items.length - start);
+    java.util.Arrays.fill(items, start, start + firstPart, null);
+    java.util.Arrays.fill(items, 0, count - firstPart, null);
+  }
+
+  /* halve the buffer (repeatedly after a bulk removal) once it is a 
+   * quarter full; growing happens at full, so a deque oscillating around 
+   * a size never copies on every call */
+  private void shrinkIfSparse() {
+    if (!shrink)
+      return;
+
+    int capacity = items.length;
+    while (capacity > MIN_CAPACITY && n <= capacity / 4)
+      capacity /= 2;
+    if (capacity != items.length)
+      resize(capacity);
+  }
+
+  /* move the items, front first, to a new buffer of the given capacity */
+  private void resize(int capacity) {
+    Item[] tmp = newArray(capacity);
+    int firstPart = Math.min(n, items.length - head);
+    System.arraycopy(items, head, tmp, 0, firstPart);
+    System.arraycopy(items, 0, tmp, firstPart, n - firstPart);
+    items = tmp;
+    head = 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <Item> Item[] newArray(int capacity) {
+    return (Item[]) new Object[capacity];
+  }
     
   private class DequeIterator implements Iterator<Item> {
-    private DequeNode<Item> itCurrent;
+    private int itCurrent; // offset of the next item from the front 
 
     public DequeIterator() {
-      itCurrent = start;
+      itCurrent = 0;
     }
 
     public boolean hasNext() {
-      return (itCurrent != null); 
+      return (itCurrent < n); 
     }
 
     public Item next() {
-      if (itCurrent == null)
+      if (itCurrent >= n)
         throw new java.util.NoSuchElementException("no more elements");
 
-      Item i = itCurrent.item;
-      itCurrent = itCurrent.next;
-      return i; 
+      return items[(head + itCurrent++) & (items.length - 1)]; 
     }
 
     public void remove() { 
@@ -180,6 +239,54 @@ public class Deque<Item> implements Iterable<Item> {
     return new DequeIterator();
   } 
 
+  private class DequeSpliterator implements Spliterator<Item> {
+    private int index; // offset of the next item from the front 
+    private int fence; // offset one past the last item of this part 
+
+    public DequeSpliterator(int index, int fence) {
+      this.index = index;
+      this.fence = fence;
+    }
+
+    public boolean tryAdvance(Consumer<? super Item> action) {
+      if (index >= fence)
+        return false;
+      action.accept(items[(head + index++) & (items.length - 1)]);
+      return true;
+    }
+
+    public void forEachRemaining(Consumer<? super Item> action) {
+      Item[] a = items;
+      int mask = a.length - 1;
+      for (; index < fence; ++index)
+        action.accept(a[(head + index) & mask]);
+    }
+
+    public Spliterator<Item> trySplit() {
+      int mid = (index + fence) >>> 1;
+      if (mid == index)
+        return null;
+      Spliterator<Item> prefix = new DequeSpliterator(index, mid);
+      index = mid;
+      return prefix;
+    }
+
+    public long estimateSize() {
+      return fence - index;
+    }
+
+    public int characteristics() {
+      return ORDERED | SIZED | SUBSIZED | NONNULL;
+    }
+  }
+
+  /* return a spliterator over items in order from front to end; it splits 
+   * in halves, so StreamSupport.stream(d.spliterator(), true) processes 
+   * the deque on all cores. The deque must not be modified meanwhile. */
+  public Spliterator<Item> spliterator() {
+    return new DequeSpliterator(0, n);
+  }
+
   /* unit testing */
   public static void main(String[] args) {
 
@@ -201,6 +308,15 @@ public class Deque<Item> implements Iterable<Item> {
       StdOut.printf("Iter %s\n", s);
     }
 
+    d.addAllFirst(new String[] { "a", "b" });
+    d.addAllLast(new String[] { "y", "z" });
+    StdOut.printf("Sum of lengths %d\n", 
+                  java.util.stream.StreamSupport.stream(d.spliterator(), true)
+                  .mapToInt(String::length).sum());
+    String[] all = new String[d.size()];
+    StdOut.printf("Drained %d: %s\n", d.drainTo(all), 
+                  java.util.Arrays.toString(all));
+
     Iterator<String> di = d.iterator();
     try {
       di.remove();
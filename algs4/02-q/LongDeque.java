@@ -0,0 +1,192 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+For more information, please refer to <http://unlicense.org/>
+*/
+
+import java.util.PrimitiveIterator;
+
+/* Deque of long values stored unboxed in a circular array. Same contract 
+ * as Deque, without allocating or boxing anywhere: not when adding or 
+ * removing, not when iterating and not when draining. */
+public class LongDeque {
+  private static final int MIN_CAPACITY = 8; // Always a power of two 
+
+  private long[] items; // circular buffer, length is a power of two 
+  private int head;     // index of the front item 
+  private int n;        // Number of elements in the deque 
+  private boolean shrink; // Whether to release memory as the deque empties 
+
+  /* construct an empty deque */
+  public LongDeque() {
+    this(true);
+  }
+
+  /* construct an empty deque; with shrink set to false the buffer never 
+   * shrinks */
+  public LongDeque(boolean shrink) {
+    items = new long[MIN_CAPACITY];
+    head = 0;
+    n = 0;
+    this.shrink = shrink;
+  }
+
+  /* is the deque empty */
+  public boolean isEmpty() {
+    return (n == 0);
+  }
+  
+  /* return number of items in the deque */
+  public int size() {
+    return n;
+  }
+
+  /* insert the item at the front */
+  public void addFirst(long item) {
+    if (n == items.length)
+      resize(2 * items.length);
+
+    head = (head - 1) & (items.length - 1);
+    items[head] = item;
+    ++n;
+  }
+
+  /* insert the item at the end */
+  public void addLast(long item) {
+    if (n == items.length)
+      resize(2 * items.length);
+
+    items[(head + n) & (items.length - 1)] = item;
+    ++n;
+  }
+
+  /* delete and return the item at the front */
+  public long removeFirst() {
+    if (n == 0)
+      throw new java.util.NoSuchElementException("deque is empty");
+    
+    long tmp = items[head];
+    head = (head + 1) & (items.length - 1);
+    --n;
+    shrinkIfSparse();
+
+    return tmp;
+  }
+
+  /* delete and return the item at the end */
+  public long removeLast() {
+    if (n == 0)
+      throw new java.util.NoSuchElementException("deque is empty");
+  
+    long tmp = items[(head + n - 1) & (items.length - 1)];
+    --n;
+    shrinkIfSparse();
+    
+    return tmp;
+  }
+
+  /* delete up to dst.length items from the front and store them in dst, 
+   * front first; return the number of items moved */
+  public int drainTo(long[] dst) {
+    int count = Math.min(n, dst.length);
+    int firstPart = Math.min(count, items.length - head);
+    System.arraycopy(items, head, dst, 0, firstPart);
+    System.arraycopy(items, 0, dst, firstPart, count - firstPart);
+
+    head = (head + count) & (items.length - 1);
+    n -= count;
+    shrinkIfSparse();
+
+    return count;
+  }
+
+  /* halve the buffer (possibly repeatedly) once it is a quarter full */
+  private void shrinkIfSparse() {
+    if (!shrink)
+      return;
+
+    int capacity = items.length;
+    while (capacity > MIN_CAPACITY && n <= capacity / 4)
+      capacity /= 2;
+    if (capacity != items.length)
+      resize(capacity);
+  }
+
+  /* move the items, front first, to a new buffer of the given capacity */
+  private void resize(int capacity) {
+    long[] tmp = new long[capacity];
+    int firstPart = Math.min(n, items.length - head);
+    System.arraycopy(items, head, tmp, 0, firstPart);
+    System.arraycopy(items, 0, tmp, firstPart, n - firstPart);
+    items = tmp;
+    head = 0;
+  }
+
+  private class DequeIterator implements PrimitiveIterator.OfLong {
+    private int itCurrent; // offset of the next item from the front 
+
+    public DequeIterator() {
+      itCurrent = 0;
+    }
+
+    public boolean hasNext() {
+      return (itCurrent < n); 
+    }
+
+    public long nextLong() {
+      if (itCurrent >= n)
+        throw new java.util.NoSuchElementException("no more elements");
+
+      return items[(head + itCurrent++) & (items.length - 1)]; 
+    }
+
+    public void remove() { 
+      throw new UnsupportedOperationException("operation not supported");
+    }
+  }
+
+  /* return an iterator over items in order from front to end; use 
+   * nextLong() to avoid boxing */ 
+  public PrimitiveIterator.OfLong iterator() {
+    return new DequeIterator();
+  } 
+
+  /* unit testing */
+  public static void main(String[] args) {
+    LongDeque d = new LongDeque();
+    for (int i = 1; i <= 20; ++i)
+      d.addLast(i);
+    d.addFirst(0);
+
+    StdOut.printf("Got %s\n", d.removeFirst());
+    StdOut.printf("Got %s\n", d.removeLast());
+
+    long[] dst = new long[16];
+    StdOut.printf("Drained %d, first %s\n", d.drainTo(dst), dst[0]);
+
+    PrimitiveIterator.OfLong it = d.iterator();
+    while (it.hasNext())
+      StdOut.printf("Iter %s\n", it.nextLong());
+  }
+}
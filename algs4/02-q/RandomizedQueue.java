@@ -26,6 +26,8 @@ For more information, please refer to <http://unlicense.org/>
 */
 
 import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 
 public class RandomizedQueue<Item> implements Iterable<Item> {
   
@@ -60,6 +62,99 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
     q[s++] = item;
   }
 
+  /* add all items, growing the array at most once */
+  public void enqueueAll(Item[] items) {
+    for (Item item : items)
+      if (item == null)
+        throw new NullPointerException("item can not be null");
+    if (items.length == 0)
+      return;
+
+    if (s + items.length > capacity) {
+      int newCapacity = (capacity == 0) ? 1 : capacity;
+      while (newCapacity < s + items.length)
+        newCapacity *= 2;
+      copyQ(newCapacity);
+      capacity = newCapacity;
+    }
+
+    System.arraycopy(items, 0, q, s, items.length);
+    s += items.length;
+  }
+
+  /* delete up to dst.length random items and store them in dst in random 
+   * order; return the number of items moved */
+  public int drainTo(Item[] dst) {
+    int k = Math.min(s, dst.length);
+    dequeue(k, dst);
+    return k;
+  }
+
+  /* delete k random items and store them in out[0 .. k-1] in random 
+   * order. The items are picked by a partial Knuth shuffle of the end of 
+   * the array, copied out at once, and the array shrinks at most once. */
+  public void dequeue(int k, Item[] out) {
+    if (k < 0 || k > out.length)
+      throw new IllegalArgumentException("illegal input parameters");
+    if (k > s)
+      throw new java.util.NoSuchElementException(
+          "k is larger than the size of the queue");
+    if (k == 0)
+      return;
+
+    shuffleTail(k);
+    System.arraycopy(q, s - k, out, 0, k);
+    for (int i = s - k; i < s; ++i)
+      q[i] = null;
+    s -= k;
+
+    if (s == 0) {
+      shrink();
+    }
+    else if (s < capacity / 4) {
+      int newCapacity = capacity / 2;
+      while (s < newCapacity / 4)
+        newCapacity /= 2;
+      copyQ(newCapacity);
+      capacity = newCapacity;
+    }
+  }
+
+  /* return (but not delete) k distinct random items, in random order. 
+   * The array is left alone, so open iterators are not disturbed: the 
+   * partial Knuth shuffle runs over positions instead, with the few 
+   * positions it moves kept in an IntIntMap, in O(k) time and memory. */
+  @SuppressWarnings("unchecked")
+  public Iterable<Item> sample(int k) {
+    if (k < 0)
+      throw new IllegalArgumentException("illegal input parameters");
+    if (k > s)
+      throw new java.util.NoSuchElementException(
+          "k is larger than the size of the queue");
+
+    Item[] items = (Item[]) new Object[k];
+    IntIntMap moved = new IntIntMap();
+    for (int i = 0; i < k; ++i) {
+      int r = i + StdRandom.uniform(s - i);
+      items[i] = q[moved.get(r, r)];
+      moved.put(r, moved.get(i, i));
+    }
+    return java.util.Arrays.asList(items);
+  }
+
+  /* move k random items, in random order, to the end of the array. The 
+   * order of the array is arbitrary anyway, so this is done in place and 
+   * costs k random numbers. */
+  private void shuffleTail(int k) {
+    for (int i = 0; i < k; ++i) {
+      int last = s - 1 - i;
+      int r = StdRandom.uniform(0, last + 1);
+      Item tmp = q[r];
+      q[r] = q[last];
+      q[last] = tmp;
+    }
+  }
+
   /* delete and return a random item */
   public Item dequeue() {
     if (s == 0)
@@ -86,29 +181,21 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
     return q[StdRandom.uniform(0, s)];
   }
 
+  /* Iterator that runs a Knuth shuffle one step per next(), so creating 
+   * it is O(1) and taking k items costs O(k). Positions moved by the 
+   * shuffle are recorded in a small hash map while few items have been 
+   * taken; once the map would be as big as a plain array of positions, 
+   * it is replaced by one. */
   private class QIterator implements Iterator<Item> {
-    private int[] seq;
+    private int[] seq;       // positions, once dense; null while sparse 
+    private IntIntMap moved; // position -> index, while sparse 
     private int current;
     private int capacityIterator;
 
     public QIterator() {
       current = 0;
       capacityIterator = size();
-      seq = new int[capacityIterator];
-      
-      int j;
-      for (j = 0; j < capacityIterator; ++j)
-        seq[j] = j;
-      
-      // Knuth shuffle
-      for (j = 0; j < capacityIterator; ++j) {
-        int r = StdRandom.uniform(j + 1);
-      
-        // Swap seq[j] with seq[r]
-        int tmp = seq[j];
-        seq[j] = seq[r];
-        seq[r] = tmp;
-      }
+      moved = new IntIntMap();
     }
     
     public boolean hasNext() {
@@ -118,20 +205,156 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
     public Item next() {
       if (current == capacityIterator)
         throw new java.util.NoSuchElementException("no more elements");
-      
-      return q[seq[current++]]; 
+
+      // Swap position current with a random later position r
+      int r = current + StdRandom.uniform(capacityIterator - current);
+      int picked;
+      if (seq != null) {
+        picked = seq[r];
+        seq[r] = seq[current];
+      }
+      else {
+        picked = moved.get(r, r);
+        moved.put(r, moved.get(current, current));
+        if (moved.size() > capacityIterator / 4)
+          densify();
+      }
+      ++current;
+      return q[picked]; 
     }
 
     public void remove() {
       throw new UnsupportedOperationException("operation not supported");
     }
+
+    /* switch from the map to an array of positions */
+    private void densify() {
+      seq = new int[capacityIterator];
+      for (int j = 0; j < capacityIterator; ++j)
+        seq[j] = j;
+      moved.copyTo(seq);
+      moved = null;
+    }
   } 
+
+  /* Open-addressing map from non-negative int keys to int values, with 
+   * just what QIterator needs */
+  private static class IntIntMap {
+    private int[] keys = newKeys(16);
+    private int[] values = new int[16];
+    private int size;
+
+    private static int[] newKeys(int n) {
+      int[] keys = new int[n];
+      java.util.Arrays.fill(keys, -1);
+      return keys;
+    }
+
+    /* index of key, or of the empty slot where it belongs */
+    private int slot(int key) {
+      int mask = keys.length - 1;
+      int h = key * 0x9E3779B9;
+      int i = (h ^ (h >>> 16)) & mask;
+      while (keys[i] != -1 && keys[i] != key)
+        i = (i + 1) & mask;
+      return i;
+    }
+
+    int size() {
+      return size;
+    }
+
+    int get(int key, int missing) {
+      int i = slot(key);
+      return (keys[i] == -1) ? missing : values[i];
+    }
+
+    void put(int key, int value) {
+      int i = slot(key);
+      if (keys[i] == -1) {
+        if (2 * (size + 1) > keys.length) {
+          grow();
+          i = slot(key);
+        }
+        keys[i] = key;
+        ++size;
+      }
+      values[i] = value;
+    }
+
+    /* store every value at its key in a */
+    void copyTo(int[] a) {
+      for (int i = 0; i < keys.length; ++i)
+        if (keys[i] != -1)
+          a[keys[i]] = values[i];
+    }
+
+    private void grow() {
+      int[] oldKeys = keys;
+      int[] oldValues = values;
+      keys = newKeys(2 * oldKeys.length);
+      values = new int[2 * oldKeys.length];
+      for (int i = 0; i < oldKeys.length; ++i)
+        if (oldKeys[i] != -1) {
+          int j = slot(oldKeys[i]);
+          keys[j] = oldKeys[i];
+          values[j] = oldValues[i];
+        }
+    }
+  }
  
   /* return an independent iterator over items in random order */
   public Iterator<Item> iterator() {
     return new QIterator();
   }
 
+  private class QSpliterator implements Spliterator<Item> {
+    private int index;
+    private int fence;
+
+    public QSpliterator(int index, int fence) {
+      this.index = index;
+      this.fence = fence;
+    }
+
+    public boolean tryAdvance(Consumer<? super Item> action) {
+      if (index >= fence)
+        return false;
+      action.accept(q[index++]);
+      return true;
+    }
+
+    public void forEachRemaining(Consumer<? super Item> action) {
+      for (; index < fence; ++index)
+        action.accept(q[index]);
+    }
+
+    public Spliterator<Item> trySplit() {
+      int mid = (index + fence) >>> 1;
+      if (mid == index)
+        return null;
+      Spliterator<Item> prefix = new QSpliterator(index, mid);
+      index = mid;
+      return prefix;
+    }
+
+    public long estimateSize() {
+      return fence - index;
+    }
+
+    public int characteristics() {
+      return SIZED | SUBSIZED | NONNULL;
+    }
+  }
+
+  /* return a spliterator over all items for (parallel) streams. Unlike 
+   * iterator() it visits the items in storage order, which is arbitrary 
+   * but not random, and in exchange splits evenly without shuffling. 
+   * The queue must not be modified meanwhile. */
+  public Spliterator<Item> spliterator() {
+    return new QSpliterator(0, s);
+  }
+
   /* expand the array to double the capacity */
   private void expand() {
     int newCapacity; 
@@ -159,8 +382,8 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
   private void copyQ(int newCapacity) {
     Item[] tmpQ = (Item[]) new Object[newCapacity];
 
-    for (int i = 0; i < s; ++i) 
-      tmpQ[i] = q[i];
+    if (s > 0)
+      System.arraycopy(q, 0, tmpQ, 0, s);
     
     q = tmpQ;
   }
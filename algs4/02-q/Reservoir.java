@@ -0,0 +1,222 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+For more information, please refer to <http://unlicense.org/>
+*/
+
+import java.util.SplittableRandom;
+
+/* Uniform sample of k items from a stream of unknown length, in O(k) 
+ * memory. Uses Li's Algorithm L: once the reservoir is full, the number 
+ * of items to pass over before the next replacement is drawn directly, 
+ * so only O(k log(n/k)) random numbers are needed for n items, and the 
+ * caller can skip the passed over items without materializing them:
+ *
+ *   for (;;) {
+ *     long gap = r.gap();
+ *     long skipped = reader.skip(gap);
+ *     r.skip(skipped);
+ *     if (skipped < gap || (item = reader.next()) == null) break;
+ *     r.add(item);
+ *   }
+ *
+ * Reservoirs of separate streams merge into a sample of their union, so 
+ * streams can be sampled in parallel. */
+public class Reservoir<Item> {
+  private final Item[] items;
+  private final SplittableRandom random;
+  private int size;    // items in the reservoir 
+  private long count;  // items seen in the stream 
+  private long gap;    // items to pass over before the next replacement 
+  private double w;    // Algorithm L's running weight 
+
+  /* construct an empty reservoir for k items */
+  public Reservoir(int k) {
+    this(k, new SplittableRandom(StdRandom.uniform(Integer.MAX_VALUE)));
+  }
+
+  /* construct an empty reservoir for k items using random */
+  @SuppressWarnings("unchecked")
+  public Reservoir(int k, SplittableRandom random) {
+    if (k < 1 || random == null)
+      throw new IllegalArgumentException("illegal input parameters");
+
+    items = (Item[]) new Object[k];
+    this.random = random;
+    size = 0;
+    count = 0;
+    gap = 0;
+  }
+
+  /* number of items in the reservoir */
+  public int size() {
+    return size;
+  }
+
+  /* number of items seen in the stream */
+  public long count() {
+    return count;
+  }
+
+  /* number of the next items that will not be kept */
+  public long gap() {
+    return gap;
+  }
+
+  /* offer the next item of the stream */
+  public void add(Item item) {
+    if (item == null)
+      throw new NullPointerException("item can not be null");
+
+    ++count;
+    if (size < items.length) {
+      items[size++] = item;
+      if (size == items.length) {
+        w = Math.exp(Math.log(uniform()) / items.length);
+        nextGap();
+      }
+    }
+    else if (gap > 0) {
+      --gap;
+    }
+    else {
+      items[random.nextInt(items.length)] = item;
+      w *= Math.exp(Math.log(uniform()) / items.length);
+      nextGap();
+    }
+  }
+
+  /* record that the next n items of the stream were passed over without 
+   * calling add(); n must not exceed gap() */
+  public void skip(long n) {
+    if (n < 0 || n > gap)
+      throw new IllegalArgumentException("illegal input parameters");
+
+    count += n;
+    gap -= n;
+  }
+
+  /* Merge other, a reservoir for k items of another stream, into this 
+   * one, which becomes a sample of both streams and can keep on taking 
+   * items. Sampling is the same as keeping the k items of smallest 
+   * uniform random key, and Algorithm L's weight is the largest key 
+   * kept. The keys are not stored, but given the counts they are just 
+   * the smallest keys of count uniforms, assigned to the items in random 
+   * order, so they are drawn here and the smallest k of both are kept. */
+  public void merge(Reservoir<Item> other) {
+    if (other.items.length != items.length)
+      throw new IllegalArgumentException("illegal input parameters");
+
+    double[] keys = keys();
+    double[] otherKeys = other.keys();
+    Item[] mine = shuffled();
+    Item[] theirs = other.shuffled();
+
+    int i = 0, j = 0;
+    size = Math.min(items.length, mine.length + theirs.length);
+    for (int m = 0; m < size; ++m) {
+      if (j == theirs.length || (i < mine.length && keys[i] < otherKeys[j])) {
+        items[m] = mine[i];
+        w = keys[i++];
+      }
+      else {
+        items[m] = theirs[j];
+        w = otherKeys[j++];
+      }
+    }
+    count += other.count;
+
+    gap = 0;
+    if (size == items.length)
+      nextGap();
+  }
+
+  /* keys of the items, in increasing order: the size smallest of count 
+   * uniforms, drawn one after another from the gaps between them */
+  private double[] keys() {
+    double[] keys = new double[size];
+    double x = 0;
+    for (int i = 0; i < size; ++i) {
+      x += (1 - x) * -Math.expm1(Math.log(uniform()) / (count - i));
+      keys[i] = x;
+    }
+    return keys;
+  }
+
+  /* the items in random order */
+  private Item[] shuffled() {
+    Item[] a = java.util.Arrays.copyOf(items, size);
+    for (int i = size - 1; i > 0; --i) {
+      int r = random.nextInt(i + 1);
+      Item tmp = a[r];
+      a[r] = a[i];
+      a[i] = tmp;
+    }
+    return a;
+  }
+
+  /* return the sampled items, in no particular order */
+  public Iterable<Item> items() {
+    return java.util.Arrays.asList(java.util.Arrays.copyOf(items, size));
+  }
+
+  /* uniform in (0, 1) */
+  private double uniform() {
+    double u;
+    do {
+      u = random.nextDouble();
+    } while (u == 0.0);
+    return u;
+  }
+
+  /* draw the number of items until the next replacement */
+  private void nextGap() {
+    double g = Math.floor(Math.log(uniform()) / Math.log1p(-w));
+    gap = (g >= Long.MAX_VALUE) ? Long.MAX_VALUE : (long) g;
+  }
+
+  /* unit testing: how often each of n items lands in a k-sample */
+  public static void main(String[] args) {
+    int n = Integer.parseInt(args[0]);
+    int k = Integer.parseInt(args[1]);
+    int trials = Integer.parseInt(args[2]);
+
+    int[] hits = new int[n];
+    SplittableRandom random = new SplittableRandom(42);
+    for (int t = 0; t < trials; ++t) {
+      Reservoir<Integer> r = new Reservoir<Integer>(k, random.split());
+      for (int i = 0; i < n; ++i)
+        r.add(i);
+      for (int i : r.items())
+        ++hits[i];
+    }
+
+    double expected = (double) trials * Math.min(n, k) / n;
+    double worst = 0;
+    for (int i = 0; i < n; ++i)
+      worst = Math.max(worst, Math.abs(hits[i] - expected) / expected);
+    StdOut.printf("expected %.1f hits per item, worst deviation %.2f%%\n", 
+                  expected, 100 * worst);
+  }
+}
@@ -0,0 +1,284 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+For more information, please refer to <http://unlicense.org/>
+*/
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/* Deque that holds only its ends in memory. Items in the middle are 
+ * written, a segment of a fixed number of items at a time, to 
+ * memory-mapped segment files through a Serializer, so the deque can be 
+ * much larger than the heap.
+ *
+ * The items are kept as front + spilled segments + back, where front and 
+ * back are in-memory Deques. When front (back) grows past two segments, 
+ * the segment next to the middle is spilled; when it runs empty, the 
+ * nearest spilled segment is loaded back, or items are taken from the 
+ * other end if nothing is spilled. After a spill or a load at least a 
+ * segment's worth of operations at that end is needed before the next 
+ * one, so all four operations are amortized O(1). Segment files and the 
+ * transfer array are reused, so steady traffic does not churn the heap.
+ *
+ * Spilled segments do not survive close(); this is not a persistent 
+ * queue. */
+public class SpillingDeque<Item> implements Closeable {
+
+  /* converts items to and from bytes in a mapped segment file */
+  public interface Serializer<Item> {
+    /* number of bytes write() will use for item */
+    int size(Item item);
+
+    /* write item at the position of out */
+    void write(Item item, ByteBuffer out);
+
+    /* read an item at the position of in */
+    Item read(ByteBuffer in);
+  }
+
+  private final Serializer<Item> serializer;
+  private final int segmentSize;       // items per spilled segment 
+  private final File dir;              // where segment files live 
+  private final Deque<Item> front;     // in-memory front items 
+  private final Deque<Item> back;      // in-memory back items 
+  private final Deque<Segment> middle; // spilled segments, front to back 
+  private final Deque<Segment> free;   // unused segment files for reuse 
+  private final Item[] transfer;       // one segment of items in transit 
+  private int nSegments;               // segment files created so far 
+  private long n;                      // Number of elements in the deque 
+
+  /* a spilled segment: segmentSize items in a file of its own */
+  private static class Segment {
+    private final File file;
+    private long bytes; // length of the serialized items 
+
+    Segment(File file) {
+      this.file = file;
+    }
+  }
+
+  /* construct an empty deque spilling segments of segmentSize items into 
+   * files in dir */
+  @SuppressWarnings("unchecked")
+  public SpillingDeque(Serializer<Item> serializer, int segmentSize, 
+                       File dir) {
+    if (serializer == null || segmentSize < 1 || !dir.isDirectory())
+      throw new IllegalArgumentException("illegal input parameters");
+
+    this.serializer = serializer;
+    this.segmentSize = segmentSize;
+    this.dir = dir;
+    front = new Deque<Item>(false);
+    back = new Deque<Item>(false);
+    middle = new Deque<Segment>();
+    free = new Deque<Segment>();
+    transfer = (Item[]) new Object[segmentSize];
+    nSegments = 0;
+    n = 0;
+  }
+
+  /* is the deque empty */
+  public boolean isEmpty() {
+    return (n == 0);
+  }
+
+  /* return number of items in the deque */
+  public long size() {
+    return n;
+  }
+
+  /* insert the item at the front */
+  public void addFirst(Item item) {
+    front.addFirst(item);
+    ++n;
+
+    if (front.size() > 2 * segmentSize) {
+      /* spill the items of front next to the middle, keeping their order */
+      for (int i = segmentSize - 1; i >= 0; --i)
+        transfer[i] = front.removeLast();
+      middle.addFirst(spill());
+    }
+  }
+
+  /* insert the item at the end */
+  public void addLast(Item item) {
+    back.addLast(item);
+    ++n;
+
+    if (back.size() > 2 * segmentSize) {
+      back.drainTo(transfer);
+      middle.addLast(spill());
+    }
+  }
+
+  /* delete and return the item at the front */
+  public Item removeFirst() {
+    if (n == 0)
+      throw new java.util.NoSuchElementException("deque is empty");
+
+    --n;
+    if (front.isEmpty()) {
+      if (middle.isEmpty())
+        return back.removeFirst();
+      load(middle.removeFirst(), front);
+    }
+    return front.removeFirst();
+  }
+
+  /* delete and return the item at the end */
+  public Item removeLast() {
+    if (n == 0)
+      throw new java.util.NoSuchElementException("deque is empty");
+
+    --n;
+    if (back.isEmpty()) {
+      if (middle.isEmpty())
+        return front.removeLast();
+      load(middle.removeLast(), back);
+    }
+    return back.removeLast();
+  }
+
+  /* deletes all segment files */
+  public void close() {
+    while (!middle.isEmpty())
+      middle.removeFirst().file.delete();
+    while (!free.isEmpty())
+      free.removeFirst().file.delete();
+  }
+
+  /* writes the transfer array to a segment file */
+  private Segment spill() {
+    Segment seg = free.isEmpty() 
+        ? new Segment(new File(dir, "segment-" + (nSegments++) + ".bin"))
+        : free.removeFirst();
+
+    long bytes = 0;
+    for (Item item : transfer)
+      bytes += serializer.size(item);
+    if (bytes > Integer.MAX_VALUE)
+      throw new IllegalStateException("segment is too large to map");
+    seg.bytes = bytes;
+
+    try {
+      RandomAccessFile file = new RandomAccessFile(seg.file, "rw");
+      try {
+        file.setLength(bytes);
+        MappedByteBuffer out = file.getChannel()
+            .map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        for (int i = 0; i < segmentSize; ++i) {
+          serializer.write(transfer[i], out);
+          transfer[i] = null;
+        }
+      }
+      finally {
+        file.close();
+      }
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return seg;
+  }
+
+  /* reads a spilled segment into the empty in-memory deque to */
+  private void load(Segment seg, Deque<Item> to) {
+    try {
+      RandomAccessFile file = new RandomAccessFile(seg.file, "r");
+      try {
+        MappedByteBuffer in = file.getChannel()
+            .map(FileChannel.MapMode.READ_ONLY, 0, seg.bytes);
+        for (int i = 0; i < segmentSize; ++i)
+          transfer[i] = serializer.read(in);
+      }
+      finally {
+        file.close();
+      }
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    to.addAllLast(transfer);
+    java.util.Arrays.fill(transfer, null);
+    free.addLast(seg);
+  }
+
+  /* serializer for strings: length, then UTF-8 bytes */
+  public static final Serializer<String> STRINGS = new Serializer<String>() {
+    public int size(String item) {
+      return 4 + item.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    public void write(String item, ByteBuffer out) {
+      byte[] bytes = item.getBytes(StandardCharsets.UTF_8);
+      out.putInt(bytes.length);
+      out.put(bytes);
+    }
+
+    public String read(ByteBuffer in) {
+      byte[] bytes = new byte[in.getInt()];
+      in.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+  };
+
+  /* unit testing: SpillingDeque dir items segmentSize */
+  public static void main(String[] args) {
+    File dir = new File(args[0]);
+    int items = Integer.parseInt(args[1]);
+    int segmentSize = Integer.parseInt(args[2]);
+
+    SpillingDeque<String> d = new SpillingDeque<String>(STRINGS, 
+                                                        segmentSize, dir);
+    try {
+      /* items -1 .. -items at the front, 0 .. items-1 at the end */
+      for (int i = 0; i < items; ++i) {
+        d.addFirst(Integer.toString(-i - 1));
+        d.addLast(Integer.toString(i));
+      }
+      StdOut.printf("size %d, %d segment files\n", d.size(), d.nSegments);
+
+      int errors = 0;
+      for (int i = items; i > 0; --i)
+        if (!d.removeFirst().equals(Integer.toString(-i)))
+          ++errors;
+      for (int i = items - 1; i >= 0; --i)
+        if (!d.removeLast().equals(Integer.toString(i)))
+          ++errors;
+      StdOut.printf("%d errors, empty: %b\n", errors, d.isEmpty());
+    }
+    finally {
+      d.close();
+    }
+  }
+}
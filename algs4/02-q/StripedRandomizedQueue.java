@@ -0,0 +1,385 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+For more information, please refer to <http://unlicense.org/>
+*/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/* Randomized queue shared by many threads. The items are spread over 
+ * stripes, each an array like RandomizedQueue's with its own lock. A 
+ * thread enqueues into its home stripe, or into the next free one if 
+ * that is locked. dequeue() picks a stripe with probability proportional 
+ * to its size and a uniform item within it, so while the stripe sizes 
+ * hold still each item is equally likely; if the stripe has meanwhile 
+ * run empty, the item is stolen from the next stripe that has one. 
+ *
+ * No call locks more than one stripe at a time, so there is no global 
+ * moment at which the whole queue is seen. dequeue() returns null when 
+ * the sizes it read added up to zero, even if an enqueue is landing in 
+ * a stripe right then; it never returns null while the queue holds 
+ * items no other thread is taking. size() and isEmpty() add up the 
+ * stripe sizes without locking, each read at a slightly different time, 
+ * so they are exact only while no other thread is changing the queue. */
+public class StripedRandomizedQueue<Item> {
+  private final Stripe[] stripes;
+  private final AtomicInteger nThreads;  // threads given a home so far 
+  private final ThreadLocal<Integer> home;
+
+  /* one array of items and its lock */
+  private static final class Stripe {
+    private final ReentrantLock lock = new ReentrantLock();
+    private Object[] items = new Object[8];
+    private volatile int size;
+
+    /* add item; the lock must be held */
+    void add(Object item) {
+      if (size == items.length)
+        items = Arrays.copyOf(items, 2 * size);
+      items[size] = item;
+      size = size + 1;
+    }
+
+    /* delete and return a random item, or null if there is none */
+    Object poll(ThreadLocalRandom random) {
+      lock.lock();
+      try {
+        int s = size;
+        if (s == 0)
+          return null;
+
+        int i = random.nextInt(s);
+        Object item = items[i];
+        items[i] = items[s - 1];
+        items[s - 1] = null;
+        size = s - 1;
+
+        if (s - 1 < items.length / 4 && items.length > 8)
+          items = Arrays.copyOf(items, items.length / 2);
+        return item;
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /* construct an empty queue with two stripes per processor */
+  public StripedRandomizedQueue() {
+    this(2 * Runtime.getRuntime().availableProcessors());
+  }
+
+  /* construct an empty queue with nStripes stripes */
+  public StripedRandomizedQueue(int nStripes) {
+    if (nStripes < 1)
+      throw new IllegalArgumentException("illegal input parameters");
+
+    stripes = new Stripe[nStripes];
+    for (int i = 0; i < nStripes; ++i)
+      stripes[i] = new Stripe();
+    nThreads = new AtomicInteger();
+    home = new ThreadLocal<Integer>() {
+      protected Integer initialValue() {
+        return nThreads.getAndIncrement() % stripes.length;
+      }
+    };
+  }
+
+  /* is the queue empty (at some moment during the call) */
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  /* number of items in the queue, a snapshot */
+  public long size() {
+    long total = 0;
+    for (Stripe stripe : stripes)
+      total += stripe.size;
+    return total;
+  }
+
+  /* add item */
+  public void enqueue(Item item) {
+    if (item == null)
+      throw new NullPointerException("item can not be null");
+
+    /* the home stripe, or the first free one after it */
+    int h = home.get();
+    for (int j = 0; j < stripes.length; ++j) {
+      Stripe stripe = stripes[(h + j) % stripes.length];
+      if (stripe.lock.tryLock()) {
+        try {
+          stripe.add(item);
+        }
+        finally {
+          stripe.lock.unlock();
+        }
+        return;
+      }
+    }
+
+    Stripe stripe = stripes[h];
+    stripe.lock.lock();
+    try {
+      stripe.add(item);
+    }
+    finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  /* delete and return a random item, or null if the queue is empty */
+  @SuppressWarnings("unchecked")
+  public Item dequeue() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (;;) {
+      long total = size();
+      if (total == 0)
+        return null;
+
+      /* the stripe holding the r-th item, as far as the sizes tell */
+      long r = random.nextLong(total);
+      int i = 0;
+      while (i < stripes.length - 1 && r >= stripes[i].size) {
+        r -= stripes[i].size;
+        ++i;
+      }
+
+      for (int j = 0; j < stripes.length; ++j) {
+        Object item = stripes[(i + j) % stripes.length].poll(random);
+        if (item != null)
+          return (Item) item;
+      }
+    }
+  }
+
+  /* uniformity test: nThreads threads fill each of many queues, thread 
+   * k with k + 1 items so the stripes end up unevenly full; the first 
+   * item dequeued from each queue should be uniform over all items */
+  private static void uniform(final int nThreads, int trials) 
+      throws InterruptedException {
+    final int n = nThreads * (nThreads + 1) / 2;
+    final List<StripedRandomizedQueue<Integer>> qs = 
+        new ArrayList<StripedRandomizedQueue<Integer>>();
+    for (int t = 0; t < trials; ++t)
+      qs.add(new StripedRandomizedQueue<Integer>());
+
+    Thread[] fillers = new Thread[nThreads];
+    for (int k = 0; k < nThreads; ++k) {
+      final int first = k * (k + 1) / 2;
+      final int count = k + 1;
+      fillers[k] = new Thread(new Runnable() {
+        public void run() {
+          for (StripedRandomizedQueue<Integer> q : qs)
+            for (int i = first; i < first + count; ++i)
+              q.enqueue(i);
+        }
+      });
+      fillers[k].start();
+    }
+    for (Thread t : fillers)
+      t.join();
+
+    int[] first = new int[n];
+    for (StripedRandomizedQueue<Integer> q : qs)
+      ++first[q.dequeue()];
+
+    double expected = (double) trials / n;
+    double chi2 = 0;
+    for (int i = 0; i < n; ++i)
+      chi2 += (first[i] - expected) * (first[i] - expected) / expected;
+    StdOut.printf("uniform: %d items, %d trials, chi-square %.1f with %d "
+                  + "degrees of freedom\n", n, trials, chi2, n - 1);
+  }
+
+  /* producer/consumer test: half the threads enqueue n distinct items 
+   * each while the other half dequeue until all are out; counts how 
+   * many items got lost or came out twice */
+  private static void transfer(int nThreads, final int n) 
+      throws InterruptedException {
+    final int nProducers = Math.max(1, nThreads / 2);
+    final int nConsumers = Math.max(1, nThreads - nProducers);
+    final int total = nProducers * n;
+    final StripedRandomizedQueue<Integer> q = 
+        new StripedRandomizedQueue<Integer>();
+    final AtomicInteger remaining = new AtomicInteger(total);
+    final int[][] seen = new int[nConsumers][total];
+
+    Thread[] threads = new Thread[nProducers + nConsumers];
+    for (int k = 0; k < nProducers; ++k) {
+      final int base = k * n;
+      threads[k] = new Thread(new Runnable() {
+        public void run() {
+          for (int i = 0; i < n; ++i)
+            q.enqueue(base + i);
+        }
+      });
+    }
+    for (int k = 0; k < nConsumers; ++k) {
+      final int[] mine = seen[k];
+      threads[nProducers + k] = new Thread(new Runnable() {
+        public void run() {
+          while (remaining.get() > 0) {
+            Integer x = q.dequeue();
+            if (x != null) {
+              ++mine[x];
+              remaining.decrementAndGet();
+            }
+          }
+        }
+      });
+    }
+    for (Thread t : threads)
+      t.start();
+    for (Thread t : threads)
+      t.join();
+
+    int bad = 0;
+    for (int i = 0; i < total; ++i) {
+      int times = 0;
+      for (int[] counts : seen)
+        times += counts[i];
+      if (times != 1)
+        ++bad;
+    }
+    StdOut.printf("transfer: %d producers, %d consumers, %d items, "
+                  + "%d lost or duplicated\n", 
+                  nProducers, nConsumers, total, bad);
+  }
+
+  /* contention benchmark: for 1, 2, 4, .. up to maxThreads threads, 
+   * released together, each doing n dequeue/enqueue pairs on a shared 
+   * pool, throughput against a RandomizedQueue guarded by a single lock, 
+   * and the speedup over one thread. Each thread holds at most one item 
+   * at a time, so a pool of 1024 items, or more with many threads, never 
+   * runs dry; an empty dequeue is skipped all the same. */
+  private static void bench(int maxThreads, int n) 
+      throws InterruptedException {
+    StdOut.printf("bench: %d processors available\n", 
+                  Runtime.getRuntime().availableProcessors());
+    double stripedBase = 0, singleBase = 0;
+    for (int nThreads = 1; ; nThreads = Math.min(2 * nThreads, maxThreads)) {
+      final StripedRandomizedQueue<Integer> striped = 
+          new StripedRandomizedQueue<Integer>();
+      final RandomizedQueue<Integer> single = new RandomizedQueue<Integer>();
+      int pool = Math.max(1024, 4 * nThreads);
+      for (int i = 0; i < pool; ++i) {
+        striped.enqueue(i);
+        single.enqueue(i);
+      }
+
+      /* best of three rounds */
+      double stripedSeconds = Double.MAX_VALUE;
+      double singleSeconds = Double.MAX_VALUE;
+      for (int round = 0; round < 3; ++round) {
+        stripedSeconds = Math.min(stripedSeconds, 
+                                  pairs(nThreads, n, new Runnable() {
+          public void run() {
+            Integer x = striped.dequeue();
+            if (x != null)
+              striped.enqueue(x);
+          }
+        }));
+        singleSeconds = Math.min(singleSeconds, 
+                                 pairs(nThreads, n, new Runnable() {
+          public void run() {
+            Integer x = null;
+            synchronized (single) {
+              if (!single.isEmpty())
+                x = single.dequeue();
+            }
+            if (x != null)
+              synchronized (single) {
+                single.enqueue(x);
+              }
+          }
+        }));
+      }
+
+      double ops = 2.0 * n * nThreads / 1e6;
+      double stripedRate = ops / stripedSeconds;
+      double singleRate = ops / singleSeconds;
+      if (nThreads == 1) {
+        stripedBase = stripedRate;
+        singleBase = singleRate;
+      }
+      StdOut.printf("bench: %3d threads, striped %6.1f Mops/s (x%.2f), "
+                    + "single lock %6.1f Mops/s (x%.2f)\n", nThreads, 
+                    stripedRate, stripedRate / stripedBase, 
+                    singleRate, singleRate / singleBase);
+      if (nThreads >= maxThreads)
+        return;
+    }
+  }
+
+  /* seconds until nThreads threads, started at once, have each run pair 
+   * n times */
+  private static double pairs(int nThreads, final int n, 
+                              final Runnable pair) 
+      throws InterruptedException {
+    final CountDownLatch go = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(nThreads);
+    for (int k = 0; k < nThreads; ++k) {
+      new Thread(new Runnable() {
+        public void run() {
+          try {
+            go.await();
+            for (int i = 0; i < n; ++i)
+              pair.run();
+          }
+          catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          finally {
+            done.countDown();
+          }
+        }
+      }).start();
+    }
+
+    long start = System.nanoTime();
+    go.countDown();
+    done.await();
+    return (System.nanoTime() - start) / 1e9;
+  }
+
+  /* unit testing: 
+   * StripedRandomizedQueue uniform|transfer|bench threads n */
+  public static void main(String[] args) throws InterruptedException {
+    int nThreads = Integer.parseInt(args[1]);
+    int n = Integer.parseInt(args[2]);
+    if (args[0].equals("uniform"))
+      uniform(nThreads, n);
+    else if (args[0].equals("bench"))
+      bench(nThreads, n);
+    else
+      transfer(nThreads, n);
+  }
+}
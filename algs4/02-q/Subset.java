@@ -25,18 +25,52 @@ OTHER DEALINGS IN THE SOFTWARE.
 For more information, please refer to <http://unlicense.org/>
 */
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
+/* Print k random tokens of stdin. With -s the input is streamed through 
+ * a k-item Reservoir instead of being read whole into a RandomizedQueue, 
+ * so memory is O(k) however large the input. With -f the tokens of all 
+ * the files given are sampled instead, each file in pieces of up to 
+ * PIECE bytes on a pool of threads, and the reservoirs are merged. */
 public class Subset { 
+  private static final long PIECE = 1L << 26;
+
   public static void main(String[] args) {
     RandomizedQueue<String> rq = new RandomizedQueue<String>();
     int k = Integer.parseInt(args[0]);
 
-    String s = StdIn.readAll();
+    if (args.length > 1 && args[1].equals("-s")) {
+      if (k > 0)
+        for (String str : sample(new TokenReader(System.in), k))
+          rq.enqueue(str);
+      k = Math.min(k, rq.size());
+    }
+    else if (args.length > 2 && args[1].equals("-f")) {
+      int nThreads = Integer.parseInt(args[2]);
+      String[] files = java.util.Arrays.copyOfRange(args, 3, args.length);
+      if (k > 0)
+        for (String str : sample(files, k, nThreads))
+          rq.enqueue(str);
+      k = Math.min(k, rq.size());
+    }
+    else {
+      String s = StdIn.readAll();
      
-    for (String str : s.split("\\s+")) { 
-      //StdOut.printf("Got %s\n", str);
-      rq.enqueue(str);
+      for (String str : s.split("\\s+")) { 
+        //StdOut.printf("Got %s\n", str);
+        rq.enqueue(str);
+      }
     }
    
     Iterator it = rq.iterator();
@@ -45,5 +79,80 @@ public class Subset {
       --k;
     }
   }  
-}
 
+  /* return k tokens sampled uniformly from reader, in no particular order */
+  static Iterable<String> sample(TokenReader reader, int k) {
+    Reservoir<String> r = new Reservoir<String>(k);
+    fill(r, reader);
+    return r.items();
+  }
+
+  /* return k tokens sampled uniformly from all files, in no particular 
+   * order, using nThreads threads */
+  static Iterable<String> sample(String[] files, int k, int nThreads) {
+    SplittableRandom master = 
+        new SplittableRandom(StdRandom.uniform(Integer.MAX_VALUE));
+    List<FileChannel> channels = new ArrayList<FileChannel>();
+    ForkJoinPool pool = new ForkJoinPool(nThreads);
+    try {
+      List<ForkJoinTask<Reservoir<String>>> tasks = 
+          new ArrayList<ForkJoinTask<Reservoir<String>>>();
+      for (String file : files) {
+        FileChannel channel = 
+            new RandomAccessFile(new File(file), "r").getChannel();
+        channels.add(channel);
+        long size = channel.size();
+        for (long start = 0; start == 0 || start < size; start += PIECE)
+          tasks.add(pool.submit(pieceTask(channel, start, 
+                                          Math.min(size, start + PIECE), 
+                                          k, master.split())));
+      }
+
+      Reservoir<String> r = new Reservoir<String>(k, master.split());
+      for (ForkJoinTask<Reservoir<String>> task : tasks)
+        r.merge(task.join());
+      return r.items();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    finally {
+      pool.shutdown();
+      for (FileChannel channel : channels)
+        try {
+          channel.close();
+        }
+        catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+    }
+  }
+
+  /* sample the tokens starting in [start, end) of a file */
+  private static Callable<Reservoir<String>> pieceTask(
+      final FileChannel channel, final long start, final long end, 
+      final int k, final SplittableRandom random) {
+    return new Callable<Reservoir<String>>() {
+      public Reservoir<String> call() {
+        Reservoir<String> r = new Reservoir<String>(k, random);
+        fill(r, new TokenReader(channel, start, end));
+        return r;
+      }
+    };
+  }
+
+  /* offer all tokens of reader to r, skipping those it would not keep */
+  private static void fill(Reservoir<String> r, TokenReader reader) {
+    for (;;) {
+      long gap = r.gap();
+      long skipped = reader.skip(gap);
+      r.skip(skipped);
+      if (skipped < gap)
+        break;
+      String token = reader.next();
+      if (token == null)
+        break;
+      r.add(token);
+    }
+  }
+}
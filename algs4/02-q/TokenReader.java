@@ -0,0 +1,206 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+For more information, please refer to <http://unlicense.org/>
+*/
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/* Whitespace separated tokens read straight from bytes. Unlike 
+ * StdIn.readAll().split("\\s+") it never holds the whole input, uses no 
+ * regex, and skip() passes over tokens without making Strings of them. 
+ * Whitespace is the same as \s: space, \t, \n, \u000B, \f and \r. Tokens 
+ * are decoded as UTF-8, whose multi-byte sequences never contain these.
+ *
+ * A file can also be read through memory-mapped windows, limited to the 
+ * tokens that start in a byte range. Adjacent ranges then split the 
+ * tokens of the file between them exactly, wherever the cuts fall, so 
+ * workers can share one large file. */
+public class TokenReader {
+  private static final int WINDOW = 1 << 26; // bytes mapped at a time 
+
+  private final InputStream in;      // null when reading a file 
+  private final FileChannel channel; // null when reading a stream 
+  private final long end;            // no tokens start at or after end 
+  private long size;                 // length of the file 
+  private long base;                 // offset of buf in the input 
+  private long next;                 // offset of the next window 
+  private ByteBuffer buf;
+  private byte[] token;  // bytes of the token being read 
+  private boolean eof;
+
+  /* read tokens from in */
+  public TokenReader(InputStream in) {
+    this.in = in;
+    channel = null;
+    end = Long.MAX_VALUE;
+    base = 0;
+    buf = ByteBuffer.allocate(1 << 16);
+    buf.limit(0);
+    token = new byte[64];
+  }
+
+  /* read the tokens of a file that start at offsets in [start, end) */
+  public TokenReader(FileChannel channel, long start, long end) {
+    if (start < 0 || start > end)
+      throw new IllegalArgumentException("illegal input parameters");
+
+    in = null;
+    this.channel = channel;
+    this.end = end;
+    buf = ByteBuffer.allocate(0);
+    token = new byte[64];
+    try {
+      size = channel.size();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    if (start == 0) {
+      next = 0;
+    }
+    else {
+      /* a token running into start belongs to the range before */
+      next = start - 1;
+      if (fill() && !isSpace(buf.get()))
+        skipToken();
+    }
+  }
+
+  /* is b a whitespace byte */
+  private static boolean isSpace(byte b) {
+    return b == ' ' || (b >= '\t' && b <= '\r');
+  }
+
+  /* refill the buffer; return false at the end of input */
+  private boolean fill() {
+    if (eof)
+      return false;
+    try {
+      if (channel != null) {
+        if (next >= size) {
+          eof = true;
+          return false;
+        }
+        long length = Math.min(WINDOW, size - next);
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, next, length);
+        base = next;
+        next += length;
+        return true;
+      }
+
+      int n;
+      do {
+        n = in.read(buf.array(), 0, buf.capacity());
+      } while (n == 0);
+      if (n < 0) {
+        eof = true;
+        return false;
+      }
+      base += buf.limit();
+      buf.position(0);
+      buf.limit(n);
+      return true;
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /* move to the start of the next token; return false at the end */
+  private boolean skipSpace() {
+    for (;;) {
+      while (buf.hasRemaining())
+        if (!isSpace(buf.get(buf.position()))) {
+          if (base + buf.position() < end)
+            return true;
+          eof = true;
+          return false;
+        }
+        else {
+          buf.position(buf.position() + 1);
+        }
+      if (!fill())
+        return false;
+    }
+  }
+
+  /* return the next token, or null at the end of input */
+  public String next() {
+    if (!skipSpace())
+      return null;
+
+    int len = 0;
+    do {
+      while (buf.hasRemaining()) {
+        byte b = buf.get();
+        if (isSpace(b))
+          return new String(token, 0, len, StandardCharsets.UTF_8);
+        if (len == token.length)
+          token = java.util.Arrays.copyOf(token, 2 * len);
+        token[len++] = b;
+      }
+    } while (fill());
+    return new String(token, 0, len, StandardCharsets.UTF_8);
+  }
+
+  /* move past the rest of the current token */
+  private void skipToken() {
+    do {
+      while (buf.hasRemaining())
+        if (isSpace(buf.get()))
+          return;
+    } while (fill());
+  }
+
+  /* pass over up to n tokens; return how many there were */
+  public long skip(long n) {
+    long skipped = 0;
+    while (skipped < n && skipSpace()) {
+      skipToken();
+      ++skipped;
+    }
+    return skipped;
+  }
+
+  /* unit testing: print the tokens of stdin, one per line, skipping 
+   * every other one if asked */
+  public static void main(String[] args) {
+    TokenReader reader = new TokenReader(System.in);
+    boolean alternate = args.length > 0 && args[0].equals("-a");
+
+    String s;
+    while ((s = reader.next()) != null) {
+      StdOut.println(s);
+      if (alternate)
+        reader.skip(1);
+    }
+  }
+}
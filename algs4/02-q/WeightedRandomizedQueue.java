@@ -0,0 +1,331 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+For more information, please refer to <http://unlicense.org/>
+*/
+
+import java.util.HashMap;
+
+/* Randomized queue where sample() and dequeue() pick each item with 
+ * probability proportional to its weight. Items are kept like in 
+ * RandomizedQueue, in an array that doubles and halves, alongside their 
+ * weights and a Fenwick tree of the weights, so a weighted pick is a 
+ * descent of the tree and enqueue, sample, dequeue and setWeight are all 
+ * O(log n). The tree is rebuilt in O(n) on every resize, which also 
+ * clears rounding drift from the incremental updates.
+ *
+ * Items are distinct: enqueueing an item already in the queue adds to 
+ * its weight. For a set that no longer changes, freeze() builds an alias 
+ * table that samples in O(1). */
+public class WeightedRandomizedQueue<Item> {
+
+  private int s;
+  private int capacity;
+  private Item[] q;
+  private double[] weights;
+  private double[] tree;  // Fenwick tree of weights, 1-based 
+  private HashMap<Item, Integer> index;
+
+  /* construct an empty weighted randomized queue */ 
+  public WeightedRandomizedQueue() {
+    s = 0;
+    capacity = 0;
+    index = new HashMap<Item, Integer>();
+  }
+
+  /* is the queue empty */
+  public boolean isEmpty() {
+    return (s == 0);
+  }
+
+  /* number of items in the queue */
+  public int size() {
+    return s;
+  }
+
+  /* sum of the weights of all items */
+  public double totalWeight() {
+    return prefix(s);
+  }
+
+  /* add item with the given weight, or add weight to item if present */
+  public void enqueue(Item item, double weight) {
+    if (item == null)
+      throw new NullPointerException("item can not be null");
+    checkWeight(weight);
+
+    Integer i = index.get(item);
+    if (i != null) {
+      add(i, weight);
+      weights[i] += weight;
+      return;
+    }
+
+    if (s == capacity) 
+      expand();
+
+    q[s] = item;
+    weights[s] = weight;
+    add(s, weight);
+    index.put(item, s++);
+  }
+
+  /* weight of item, 0 if it is not in the queue */
+  public double weight(Item item) {
+    Integer i = index.get(item);
+    return (i == null) ? 0.0 : weights[i];
+  }
+
+  /* change the weight of an item in the queue */
+  public void setWeight(Item item, double weight) {
+    checkWeight(weight);
+    Integer i = index.get(item);
+    if (i == null)
+      throw new java.util.NoSuchElementException("item not in queue");
+
+    add(i, weight - weights[i]);
+    weights[i] = weight;
+  }
+
+  /* delete and return a random item, chosen by weight */
+  public Item dequeue() {
+    if (s == 0)
+      throw new java.util.NoSuchElementException("queue is empty");
+
+    int i = pick();
+    Item tmpItem = q[i];
+    index.remove(tmpItem);
+
+    /* move the last item into the hole */
+    --s;
+    add(i, weights[s] - weights[i]);
+    add(s, -weights[s]);
+    if (i != s) {
+      q[i] = q[s];
+      weights[i] = weights[s];
+      index.put(q[i], i);
+    }
+    q[s] = null;
+    weights[s] = 0.0;
+
+    if ((s == 0) || (s < (capacity / 4)))
+      shrink(); 
+    
+    return tmpItem;
+  }
+  
+  /* return (but not delete) a random item, chosen by weight */
+  public Item sample() {
+    if (s == 0)
+      throw new java.util.NoSuchElementException("queue is empty");
+
+    return q[pick()];
+  }
+
+  /* return an alias table of the items as they are now */
+  public AliasTable<Item> freeze() {
+    return new AliasTable<Item>(q, weights, s);
+  }
+
+  /* Vose's alias method: a fixed weighted set sampled in O(1) with one 
+   * uniform index and one coin flip per sample */
+  public static class AliasTable<Item> {
+    private final Object[] items;
+    private final double[] prob;  // chance of keeping column i 
+    private final int[] alias;    // the other item of column i 
+
+    private AliasTable(Item[] q, double[] weights, int n) {
+      if (n == 0)
+        throw new java.util.NoSuchElementException("queue is empty");
+
+      items = java.util.Arrays.copyOf(q, n, Object[].class);
+      prob = new double[n];
+      alias = new int[n];
+
+      double total = 0;
+      for (int i = 0; i < n; ++i)
+        total += weights[i];
+
+      /* split the columns scaled to mean 1 into small and large ones */
+      int[] small = new int[n];
+      int[] large = new int[n];
+      int nSmall = 0, nLarge = 0;
+      for (int i = 0; i < n; ++i) {
+        prob[i] = weights[i] * n / total;
+        if (prob[i] < 1.0)
+          small[nSmall++] = i;
+        else
+          large[nLarge++] = i;
+      }
+
+      /* top up each small column from a large one */
+      while (nSmall > 0 && nLarge > 0) {
+        int l = small[--nSmall];
+        int g = large[nLarge - 1];
+        alias[l] = g;
+        prob[g] -= 1.0 - prob[l];
+        if (prob[g] < 1.0) {
+          --nLarge;
+          small[nSmall++] = g;
+        }
+      }
+
+      /* what is left is 1 up to rounding */
+      while (nLarge > 0)
+        prob[large[--nLarge]] = 1.0;
+      while (nSmall > 0)
+        prob[small[--nSmall]] = 1.0;
+    }
+
+    /* number of items */
+    public int size() {
+      return items.length;
+    }
+
+    /* return a random item, chosen by weight */
+    @SuppressWarnings("unchecked")
+    public Item sample() {
+      int i = StdRandom.uniform(items.length);
+      if (StdRandom.uniform() >= prob[i])
+        i = alias[i];
+      return (Item) items[i];
+    }
+  }
+
+  /* index of a random item, chosen by weight */
+  private int pick() {
+    double total = prefix(s);
+    for (;;) {
+      double u = StdRandom.uniform() * total;
+
+      /* descend to the first index whose prefix sum exceeds u */
+      int pos = 0;
+      for (int step = Integer.highestOneBit(capacity); step > 0; step >>= 1)
+        if (pos + step <= capacity && tree[pos + step] <= u) {
+          pos += step;
+          u -= tree[pos];
+        }
+
+      /* only rounding can land past the items or on a zero weight */
+      if (pos < s && weights[pos] > 0)
+        return pos;
+    }
+  }
+
+  /* add delta to the weight at i in the tree */
+  private void add(int i, double delta) {
+    for (int j = i + 1; j <= capacity; j += j & -j)
+      tree[j] += delta;
+  }
+
+  /* sum of the weights at 0 .. n-1 */
+  private double prefix(int n) {
+    double sum = 0;
+    for (int j = n; j > 0; j -= j & -j)
+      sum += tree[j];
+    return sum;
+  }
+
+  private static void checkWeight(double weight) {
+    if (!(weight > 0) || Double.isInfinite(weight))
+      throw new IllegalArgumentException("weight must be positive");
+  }
+
+  /* expand the arrays to double the capacity */
+  private void expand() {
+    int newCapacity; 
+    if (capacity == 0) newCapacity = 1;
+    else newCapacity = capacity * 2;
+    
+    copyQ(newCapacity);
+    capacity = newCapacity;
+  }
+  
+  /* shrink the arrays to half the current capacity */
+  private void shrink() {
+    if (s == 0) {
+      q = null;
+      weights = null;
+      tree = null;
+      capacity = 0;
+      return;
+    }
+    int newCapacity = capacity / 2;
+
+    copyQ(newCapacity);
+    capacity = newCapacity;
+  }
+
+  /* create new arrays, copy contents and rebuild the tree in O(n) */
+  @SuppressWarnings("unchecked")
+  private void copyQ(int newCapacity) {
+    Item[] tmpQ = (Item[]) new Object[newCapacity];
+    double[] tmpWeights = new double[newCapacity];
+    if (s > 0) {
+      System.arraycopy(q, 0, tmpQ, 0, s);
+      System.arraycopy(weights, 0, tmpWeights, 0, s);
+    }
+
+    tree = new double[newCapacity + 1];
+    for (int j = 1; j <= newCapacity; ++j) {
+      tree[j] += tmpWeights[j - 1];
+      int parent = j + (j & -j);
+      if (parent <= newCapacity)
+        tree[parent] += tree[j];
+    }
+    
+    q = tmpQ;
+    weights = tmpWeights;
+  }
+
+  /* unit testing: frequencies of items with weights 1 .. n */
+  public static void main(String[] args) {
+    int n = Integer.parseInt(args[0]);
+    int trials = Integer.parseInt(args[1]);
+
+    WeightedRandomizedQueue<Integer> wq = 
+        new WeightedRandomizedQueue<Integer>();
+    for (int i = 1; i <= n; ++i)
+      wq.enqueue(i, i);
+    AliasTable<Integer> table = wq.freeze();
+
+    int[] tree = new int[n + 1];
+    int[] alias = new int[n + 1];
+    for (int t = 0; t < trials; ++t) {
+      ++tree[wq.sample()];
+      ++alias[table.sample()];
+    }
+    double total = n * (n + 1) / 2.0;
+    for (int i = 1; i <= n; ++i)
+      StdOut.printf("%d: expected %.4f, tree %.4f, alias %.4f\n", i, 
+                    i / total, (double) tree[i] / trials, 
+                    (double) alias[i] / trials);
+
+    /* weights 1 .. n are dequeued heaviest first, roughly */
+    StdOut.printf("dequeued:");
+    while (!wq.isEmpty())
+      StdOut.printf(" %d", wq.dequeue());
+    StdOut.printf("\n");
+  }
+}
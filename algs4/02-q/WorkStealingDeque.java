@@ -0,0 +1,298 @@
+/*
+This is free and unencumbered software released into the public domain.
+
+Anyone is free to copy, modify, publish, use, compile, sell, or
+distribute this software, either in source code form or as a compiled
+binary, for any purpose, commercial or non-commercial, and by any
+means.
+
+In jurisdictions that recognize copyright laws, the author or authors
+of this software dedicate any and all copyright interest in the
+software to the public domain. We make this dedication for the benefit
+of the public at large and to the detriment of our heirs and
+successors. We intend this dedication to be an overt act of
+relinquishment in perpetuity of all present and future rights to this
+software under copyright law.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+OTHER DEALINGS IN THE SOFTWARE.
+
+For more information, please refer to <http://unlicense.org/>
+*/
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/* Chase-Lev work-stealing deque. One owner thread adds and removes items 
+ * at the end without locks or CAS (except when taking the last item); 
+ * any other thread may steal items from the front with a single CAS. 
+ * The items live in a growable circular array.
+ *
+ * Since other threads can take items at any time, removeLast() and 
+ * steal() return null instead of throwing when there is nothing to take, 
+ * and size() is only a snapshot. */
+public class WorkStealingDeque<Item> {
+  private static final int MIN_CAPACITY = 32; // Always a power of two 
+
+  private final AtomicLong top;  // index of the front item, only grows 
+  private volatile long bottom;  // index one past the end item 
+  private volatile Buffer buffer;
+
+  /* circular array indexed by the unbounded top/bottom counters */
+  private static final class Buffer {
+    private final AtomicReferenceArray<Object> items;
+    private final int mask;
+
+    Buffer(int capacity) {
+      items = new AtomicReferenceArray<Object>(capacity);
+      mask = capacity - 1;
+    }
+
+    int capacity() {
+      return mask + 1;
+    }
+
+    Object get(long i) {
+      return items.get((int) i & mask);
+    }
+
+    void put(long i, Object item) {
+      items.set((int) i & mask, item);
+    }
+
+    /* copy of items [t, b) into a buffer twice as large */
+    Buffer grow(long t, long b) {
+      Buffer tmp = new Buffer(2 * capacity());
+      for (long i = t; i < b; ++i)
+        tmp.put(i, get(i));
+      return tmp;
+    }
+  }
+
+  /* construct an empty deque */
+  public WorkStealingDeque() {
+    top = new AtomicLong(0);
+    bottom = 0;
+    buffer = new Buffer(MIN_CAPACITY);
+  }
+
+  /* is the deque empty (snapshot) */
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  /* return number of items in the deque (snapshot) */
+  public int size() {
+    long n = bottom - top.get();
+    return (int) Math.max(0, n);
+  }
+
+  /* insert the item at the end; owner thread only */
+  public void addLast(Item item) {
+    if (item == null)
+      throw new NullPointerException("item can not be null");
+
+    long b = bottom;
+    long t = top.get();
+    Buffer a = buffer;
+    if (b - t >= a.capacity()) {
+      a = a.grow(t, b);
+      buffer = a;
+    }
+    a.put(b, item);
+    /* volatile write publishes the item to thieves */
+    bottom = b + 1;
+  }
+
+  /* delete and return the item at the end, null if there is none; owner 
+   * thread only */
+  @SuppressWarnings("unchecked")
+  public Item removeLast() {
+    long b = bottom - 1;
+    Buffer a = buffer;
+    /* volatile write followed by a volatile read of top: thieves either 
+     * see the smaller bottom or the owner sees their increment of top */
+    bottom = b;
+    long t = top.get();
+
+    if (t > b) {
+      /* empty */
+      bottom = b + 1;
+      return null;
+    }
+
+    Item item = (Item) a.get(b);
+    if (t == b) {
+      /* last item: race the thieves for it */
+      if (!top.compareAndSet(t, t + 1))
+        item = null;
+      else
+        a.put(b, null);
+      bottom = b + 1;
+      return item;
+    }
+
+    /* no thief can reach slot b any more, drop the reference */
+    a.put(b, null);
+    return item;
+  }
+
+  /* delete and return the item at the front, null if there is none or 
+   * another thread took it first; any thread */
+  @SuppressWarnings("unchecked")
+  public Item steal() {
+    long t = top.get();
+    long b = bottom;
+    if (t >= b)
+      return null;
+
+    Buffer a = buffer;
+    Item item = (Item) a.get(t);
+    /* the slot is not cleared: once top moves on, the owner may already 
+     * be reusing it. The stale reference is overwritten on wrap-around. */
+    if (!top.compareAndSet(t, t + 1))
+      return null;
+    return item;
+  }
+
+  /* stress test: the owner adds items 0..n-1 interleaved with removes 
+   * while thieves steal; every item must be taken exactly once */
+  private static void stress(int nThieves, final int n) 
+      throws InterruptedException {
+    final WorkStealingDeque<Integer> d = new WorkStealingDeque<Integer>();
+    final AtomicIntegerArray taken = new AtomicIntegerArray(n);
+    final Integer[] items = boxed(n);
+    final AtomicBoolean done = new AtomicBoolean();
+
+    Thread[] thieves = new Thread[nThieves];
+    for (int k = 0; k < nThieves; ++k) {
+      thieves[k] = new Thread(new Runnable() {
+        public void run() {
+          while (true) {
+            Integer x = d.steal();
+            if (x != null) 
+              taken.incrementAndGet(x);
+            else if (done.get() && d.isEmpty()) 
+              return;
+          }
+        }
+      });
+      thieves[k].start();
+    }
+
+    for (int i = 0; i < n; ++i) {
+      d.addLast(items[i]);
+      if (i % 3 == 0) {
+        Integer x = d.removeLast();
+        if (x != null) 
+          taken.incrementAndGet(x);
+      }
+    }
+    Integer x;
+    while ((x = d.removeLast()) != null)
+      taken.incrementAndGet(x);
+    done.set(true);
+    for (Thread t : thieves)
+      t.join();
+
+    int errors = 0;
+    for (int i = 0; i < n; ++i)
+      if (taken.get(i) != 1) 
+        ++errors;
+    StdOut.printf("stress: %d items, %d thieves, %d errors\n", 
+                  n, nThieves, errors);
+  }
+
+  /* throughput: the owner adds n items and takes every other one back 
+   * while thieves steal, compared with ConcurrentLinkedDeque */
+  private static void bench(int nThieves, final int n) 
+      throws InterruptedException {
+    final Integer[] items = boxed(n);
+    for (int round = 0; round < 3; ++round) {
+      final WorkStealingDeque<Integer> ws = new WorkStealingDeque<Integer>();
+      final ConcurrentLinkedDeque<Integer> cl = 
+          new ConcurrentLinkedDeque<Integer>();
+
+      double wsTime = time(nThieves, new Runnable() {
+        public void run() {
+          for (int i = 0; i < n; ++i) {
+            ws.addLast(items[i]);
+            if ((i & 1) == 0) ws.removeLast();
+          }
+        }
+      }, new Runnable() {
+        public void run() {
+          ws.steal();
+        }
+      });
+
+      double clTime = time(nThieves, new Runnable() {
+        public void run() {
+          for (int i = 0; i < n; ++i) {
+            cl.addLast(items[i]);
+            if ((i & 1) == 0) cl.pollLast();
+          }
+        }
+      }, new Runnable() {
+        public void run() {
+          cl.pollFirst();
+        }
+      });
+
+      StdOut.printf("bench: %d thieves, WorkStealingDeque %.1f Mops/s, "
+                    + "ConcurrentLinkedDeque %.1f Mops/s\n", nThieves, 
+                    1.5 * n / wsTime / 1e6, 1.5 * n / clTime / 1e6);
+    }
+  }
+
+  /* seconds taken by owner while thieves run steal repeatedly */
+  private static double time(int nThieves, Runnable owner, 
+                             final Runnable steal) 
+      throws InterruptedException {
+    final AtomicBoolean stop = new AtomicBoolean();
+    Thread[] thieves = new Thread[nThieves];
+    for (int k = 0; k < nThieves; ++k) {
+      thieves[k] = new Thread(new Runnable() {
+        public void run() {
+          while (!stop.get()) 
+            steal.run();
+        }
+      });
+      thieves[k].start();
+    }
+
+    long start = System.nanoTime();
+    owner.run();
+    double elapsed = (System.nanoTime() - start) / 1e9;
+
+    stop.set(true);
+    for (Thread t : thieves)
+      t.join();
+    return elapsed;
+  }
+
+  private static Integer[] boxed(int n) {
+    Integer[] items = new Integer[n];
+    for (int i = 0; i < n; ++i)
+      items[i] = i;
+    return items;
+  }
+
+  /* unit testing: WorkStealingDeque stress|bench thieves items */
+  public static void main(String[] args) throws InterruptedException {
+    int nThieves = Integer.parseInt(args[1]);
+    int n = Integer.parseInt(args[2]);
+    if (args[0].equals("bench"))
+      bench(nThieves, n);
+    else
+      stress(nThieves, n);
+  }
+}